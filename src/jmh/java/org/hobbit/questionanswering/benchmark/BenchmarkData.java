@@ -0,0 +1,108 @@
+package org.hobbit.questionanswering.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Synthetic input of the JMH benchmarks: a QALD Json data set and a stub SPARQL endpoint,
+ * so the benchmarks measure the benchmark components and not a remote service.
+ */
+public final class BenchmarkData {
+
+	/*
+	 * Every query gets the same two resources, enough for QaldBuilder to accept the question.
+	 */
+	private static final byte[] RESULTS = ("{ \"head\" : { \"vars\" : [ \"uri\" ] } , \"results\" : { \"bindings\" : [ "
+			+ "{ \"uri\" : { \"type\" : \"uri\" , \"value\" : \"http://dbpedia.org/resource/Leipzig\" } } , "
+			+ "{ \"uri\" : { \"type\" : \"uri\" , \"value\" : \"http://dbpedia.org/resource/Paderborn\" } } ] } }")
+			.getBytes(StandardCharsets.UTF_8);
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * To write a data set in the format of the large scale data sets,
+	 * every question is given in English and German.
+	 * @param questions : number of questions
+	 * @return the file, deleted when the JVM exits
+	 * @throws IOException
+	 */
+	public static File writeDataset(int questions) throws IOException {
+		File file = File.createTempFile("qa-benchmark", ".json");
+		file.deleteOnExit();
+		try(PrintWriter out = new PrintWriter(file, "UTF-8")) {
+			out.println("[");
+			for(int i=0;i<questions;i++) {
+				out.print("{ \"id\" : \""+i+"\" , \"answertype\" : \"resource\" , \"aggregation\" : false , \"onlydbo\" : true , \"hybrid\" : false , "
+						+ "\"question\" : [ { \"language\" : \"en\" , \"string\" : \"Which cities are twinned with city "+i+"?\" , \"keywords\" : \"city, twinned\" } , "
+						+ "{ \"language\" : \"de\" , \"string\" : \"Welche Orte sind Partnerstadt von Stadt "+i+"?\" , \"keywords\" : \"Stadt, Partnerstadt\" } ] , "
+						+ "\"query\" : { \"sparql\" : \"PREFIX dbo: <http://dbpedia.org/ontology/> PREFIX res: <http://dbpedia.org/resource/> "
+						+ "SELECT DISTINCT ?uri WHERE { res:City_"+i+" dbo:twinTown ?uri . }\" } , \"answers\" : [ ] }");
+				out.println(i<questions-1 ? "," : "");
+			}
+			out.println("]");
+		}
+		return file;
+	}
+
+	/**
+	 * To write a data set in the format of the multilingual data sets, with a numeric id and a query per language,
+	 * every question is given in English and German.
+	 * @param questions : number of questions
+	 * @return the file, deleted when the JVM exits
+	 * @throws IOException
+	 */
+	public static File writeMultilingualDataset(int questions) throws IOException {
+		File file = File.createTempFile("qa-benchmark-multilingual", ".json");
+		file.deleteOnExit();
+		try(PrintWriter out = new PrintWriter(file, "UTF-8")) {
+			out.println("[");
+			for(int i=0;i<questions;i++) {
+				String sparql = "{ \"sparql\" : \"PREFIX dbo: <http://dbpedia.org/ontology/> PREFIX res: <http://dbpedia.org/resource/> "
+						+ "SELECT DISTINCT ?uri WHERE { res:City_"+i+" dbo:twinTown ?uri . }\" }";
+				out.print("{ \"id\" : "+i+" , \"answertype\" : \"resource\" , \"aggregation\" : false , \"onlydbo\" : true , \"hybrid\" : false , "
+						+ "\"question\" : [ { \"language\" : \"en\" , \"string\" : \"Which cities are twinned with city "+i+"?\" , \"keywords\" : \"city, twinned\" } , "
+						+ "{ \"language\" : \"de\" , \"string\" : \"Welche Orte sind Partnerstadt von Stadt "+i+"?\" , \"keywords\" : \"Stadt, Partnerstadt\" } ] , "
+						+ "\"query\" : [ "+sparql+" , "+sparql+" ] , \"answers\" : [ ] }");
+				out.println(i<questions-1 ? "," : "");
+			}
+			out.println("]");
+		}
+		return file;
+	}
+
+	/**
+	 * To start a SPARQL endpoint on a free local port, which answers every query at once with the same resources.
+	 * @return the server, its endpoint is {@link #endpoint(HttpServer)}
+	 * @throws IOException
+	 */
+	public static HttpServer startSparqlEndpoint() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/sparql", exchange -> {
+			// drain a POSTed query
+			while(exchange.getRequestBody().read()!=-1);
+			exchange.getResponseHeaders().set("Content-Type", "application/sparql-results+json");
+			exchange.sendResponseHeaders(200, RESULTS.length);
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(RESULTS);
+			}
+		});
+		server.start();
+		return server;
+	}
+
+	/**
+	 * @param server : a server started by {@link #startSparqlEndpoint()}
+	 * @return url of its SPARQL endpoint
+	 */
+	public static String endpoint(HttpServer server) {
+		return "http://"+server.getAddress().getHostString()+":"+server.getAddress().getPort()+"/sparql";
+	}
+}
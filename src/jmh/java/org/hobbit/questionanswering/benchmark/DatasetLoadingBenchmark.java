@@ -0,0 +1,104 @@
+package org.hobbit.questionanswering.benchmark;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.atlas.json.JsonValue;
+import org.hobbit.questionanswering.helper.BinaryDataset;
+import org.hobbit.questionanswering.helper.DatasetConverter;
+import org.hobbit.questionanswering.helper.DatasetIndex;
+import org.hobbit.questionanswering.helper.QaHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Time the data generator spends in init to load a data set and resolve the answers of the sampled questions,
+ * against a local stub SPARQL endpoint.
+ * Eager sampling resolves the answers of every question before it samples them, lazy sampling only of the sampled ones,
+ * streaming keeps a reservoir of candidates instead of the whole data set. A precompiled data set isn't streamed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DatasetLoadingBenchmark {
+
+	@Param({"2000"})
+	public int datasetSize;
+
+	@Param({"50"})
+	public int numberOfQuestions;
+
+	@Param({"eager", "lazy", "streaming"})
+	public String sampling;
+
+	@Param({"1", "4"})
+	public int sparqlWorkers;
+
+	private static final int STREAMING_RESERVOIR_FACTOR = 4;
+
+	private File dataset;
+	private File multilingualDataset;
+	// a copy of the data set with a precompiled file next to it, the Json data set stays without one
+	private File precompiledDataset;
+	private HttpServer sparqlEndpoint;
+
+	@Setup
+	public void setUp() throws Exception {
+		dataset = BenchmarkData.writeDataset(datasetSize);
+		multilingualDataset = BenchmarkData.writeMultilingualDataset(datasetSize);
+		precompiledDataset = BenchmarkData.writeDataset(datasetSize);
+		DatasetConverter.main(new String[] {precompiledDataset.getPath()});
+		sparqlEndpoint = BenchmarkData.startSparqlEndpoint();
+	}
+
+	@TearDown
+	public void tearDown() {
+		sparqlEndpoint.stop(0);
+		dataset.delete();
+		multilingualDataset.delete();
+		File precompiled = BinaryDataset.fileFor(precompiledDataset.getPath());
+		DatasetIndex.fileFor(precompiled).delete();
+		precompiled.delete();
+		precompiledDataset.delete();
+	}
+
+	@Benchmark
+	public List<JsonValue> largeScale() throws Exception {
+		return this.helper().getLargeScaleData(dataset.getPath());
+	}
+
+	@Benchmark
+	public List<JsonValue> multilingual() throws Exception {
+		return this.helper().getMultilingualData(multilingualDataset.getPath(), "de");
+	}
+
+	@Benchmark
+	public List<JsonValue> largeScalePrecompiled() throws Exception {
+		return this.helper().getLargeScaleData(precompiledDataset.getPath());
+	}
+
+	private QaHelper helper() {
+		QaHelper helper = new QaHelper(42, numberOfQuestions, BenchmarkData.endpoint(sparqlEndpoint));
+		helper.setAnswerResolution(sparqlWorkers, 2*sparqlWorkers, 10000);
+		helper.setLazySampling(!"eager".equals(sampling));
+		if("streaming".equals(sampling))
+			helper.setStreaming(STREAMING_RESERVOIR_FACTOR);
+		return helper;
+	}
+}
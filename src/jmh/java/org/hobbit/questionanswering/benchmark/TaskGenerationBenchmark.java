@@ -0,0 +1,107 @@
+package org.hobbit.questionanswering.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonValue;
+import org.hobbit.questionanswering.helper.MessageBatcher;
+import org.hobbit.questionanswering.helper.PayloadCodec;
+import org.hobbit.questionanswering.helper.TaskPayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per-question overhead of the path between the data generator and the system:
+ * the data generator serializes, batches and encodes the questions, the task generator's
+ * generateTask decodes, unbatches and splits them into task and answer data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TaskGenerationBenchmark {
+
+	private static final int QUESTIONS = 100;
+
+	@Param({"none", "deflate"})
+	public String payloadCodec;
+
+	@Param({"1", "20"})
+	public int batchSize;
+
+	private List<JsonValue> questions;
+	private List<byte[]> payloads;
+	private List<byte[]> messages;
+	private PayloadCodec codec;
+
+	@Setup
+	public void setUp() throws Exception {
+		questions = new ArrayList<JsonValue>();
+		for(JsonValue question:JSON.readAny(BenchmarkData.writeDataset(QUESTIONS).getPath()).getAsArray())
+			questions.add(question);
+		codec = new PayloadCodec(payloadCodec);
+		payloads = new ArrayList<byte[]>();
+		for(int i=0;i<QUESTIONS;i++)
+			payloads.add(TaskPayload.encode(i, questions.get(i), "hobbit_qa_benchmark"));
+		messages = this.send(payloads);
+	}
+
+	/**
+	 * Serialization of task and answer data in the data generator.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(QUESTIONS)
+	public void serializeQuestions(Blackhole blackhole) {
+		for(int i=0;i<QUESTIONS;i++)
+			blackhole.consume(TaskPayload.encode(i, questions.get(i), "hobbit_qa_benchmark"));
+	}
+
+	/**
+	 * Batching and encoding of serialized questions in the data generator.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(QUESTIONS)
+	public List<byte[]> encodeMessages() throws IOException {
+		return this.send(payloads);
+	}
+
+	/**
+	 * The decoding generateTask does with the messages of the data generator.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(QUESTIONS)
+	public void generateTasks(Blackhole blackhole) throws IOException {
+		for(byte[] message:messages) {
+			for(TaskPayload payload:TaskPayload.decodeMessage(codec, message)) {
+				blackhole.consume(payload.getTask());
+				blackhole.consume(payload.getAnswer());
+			}
+		}
+	}
+
+	private List<byte[]> send(List<byte[]> payloads) throws IOException {
+		List<byte[]> sent = new ArrayList<byte[]>();
+		try(MessageBatcher batcher = new MessageBatcher(batchSize, 0, 0, batch -> sent.add(codec.encode(batch)))) {
+			for(byte[] payload:payloads)
+				batcher.add(payload);
+			batcher.flush();
+		}
+		return sent;
+	}
+}
@@ -1,18 +1,36 @@
 package org.hobbit.questionanswering;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.aksw.gerbil.datatypes.ExperimentType;
 import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
 import org.apache.jena.rdf.model.NodeIterator;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
 import org.hobbit.core.Commands;
+import org.hobbit.core.Constants;
 import org.hobbit.core.components.AbstractBenchmarkController;
+import org.hobbit.questionanswering.helper.AckListener;
+import org.hobbit.questionanswering.helper.AnswerResolver;
+import org.hobbit.questionanswering.helper.ArrivalProcess;
+import org.hobbit.questionanswering.helper.LatencyHistogram;
+import org.hobbit.questionanswering.helper.Metrics;
+import org.hobbit.questionanswering.helper.SparqlHttpClient;
+import org.hobbit.questionanswering.helper.TaskTracker;
 import org.apache.logging.log4j.Logger;
-import org.apache.logging.log4j.core.config.Configurator;
-import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 
 
@@ -31,6 +49,18 @@ public class QaBenchmark extends AbstractBenchmarkController {
 	private static final String DATA_GENERATOR_CONTAINER_IMAGE = "git.project-hobbit.eu:4567/weekmo/qadatagenv3a";
 	private static final String TASK_GENERATOR_CONTAINER_IMAGE = "git.project-hobbit.eu:4567/weekmo/qataskgenv3a";
 	private static final String EVALUATION_MODULE_CONTAINER_IMAGE = "git.project-hobbit.eu:4567/conrads/qaevaluationmodule";
+	private static final String BUILTIN_EVALUATION_MODULE_CONTAINER_IMAGE = "git.project-hobbit.eu:4567/weekmo/qaevalmodulev3a";
+	
+	//Log level of all components, read by log4j2.xml
+	public static final String LOG_LEVEL_PARAMETER_KEY = "qa.log_level";
+	//Time in ms the system gets to answer a task after it was sent, 1 minute for largescale and 10 minutes otherwise by default
+	public static final String TASK_TIMEOUT_PARAMETER_KEY = "qa.task_timeout";
+	//Time in ms of a single ASK probe of the SPARQL service and the number of probes before giving up
+	public static final String PROBE_TIMEOUT_PARAMETER_KEY = "qa.probe_timeout";
+	public static final String PROBE_ATTEMPTS_PARAMETER_KEY = "qa.probe_attempts";
+	private static final long DEFAULT_PROBE_TIMEOUT = 10000;
+	private static final int DEFAULT_PROBE_ATTEMPTS = 3;
+	private static final long PROBE_BACKOFF = 1000;
 	
 	//private static  String EVALUATION_MODULE_CONTAINER_IMAGE = "git.project-hobbit.eu:4567/cmartens/qaevaluationmodule";
 	protected static final String gerbilUri = "http://w3id.org/gerbil/vocab#";
@@ -54,6 +84,15 @@ public class QaBenchmark extends AbstractBenchmarkController {
 	protected static final Resource TWO_TRIPLES = qaResource("twoTriple");
 	protected static final Resource THREE_TRIPLES = qaResource("threeTriple");
 	protected static final Resource NO_TRIPLES = qaResource("NoTriple");
+	protected static final Resource RAMP_DISPATCH = qaResource("rampDispatch");
+	protected static final Resource OPEN_LOOP_DISPATCH = qaResource("openLoopDispatch");
+	protected static final Resource ADAPTIVE_DISPATCH = qaResource("adaptiveDispatch");
+	protected static final Resource POISSON_ARRIVAL = qaResource("poissonArrival");
+	protected static final Resource CONSTANT_ARRIVAL = qaResource("constantArrival");
+	protected static final Resource BURST_ARRIVAL = qaResource("burstArrival");
+	protected static final Resource STEP_ARRIVAL = qaResource("stepArrival");
+	protected static final Resource EXTERNAL_EVALUATION = qaResource("externalEvaluation");
+	protected static final Resource BUILTIN_EVALUATION = qaResource("builtinEvaluation");
 	
 	private final String _LARGESCALE="largescale";
 	private final String _MULTILINGUAL="multilingual";
@@ -73,10 +112,36 @@ public class QaBenchmark extends AbstractBenchmarkController {
 	private long timeForAnswering;
 	private long seed;
 	
+	private String dispatchMode;
+	private String arrivalProcess;
+	private double arrivalRate;
+	private int burstSize;
+	private long stepDuration;
+	private long latencyThreshold;
+	private double errorThreshold;
+	private String evaluationModuleImage;
+	private boolean incrementalEvaluation;
+	
+	//KPIs measured by the generators, added to the result model
+	private Map<String, Double> generatorKpis = Collections.synchronizedMap(new LinkedHashMap<String, Double>());
+	//latencies measured by the task generators per question set (-1 for all questions), merged over the generators
+	private Map<Integer, LatencyHistogram> latencies = new TreeMap<Integer, LatencyHistogram>();
+	private Map<Integer, Integer> unanswered = new TreeMap<Integer, Integer>();
+	//dispatch jitter of the task generators, the mean is weighted with their number of sent sets
+	private long jitterSets;
+	private double jitterSum;
+	private long maxJitter;
+	
 	private long startTime;
 	
-	//create single data and task generator
-	private final int NUMBER_OF_GENERATORS = 1;
+	//tasks sent by the task generators until they are answered or timed out
+	private TaskTracker taskTracker;
+	private long taskTimeout;
+	private AckListener ackListener;
+	
+	//number of data and task generators, one of each by default
+	private static final int DEFAULT_NUMBER_OF_GENERATORS = 1;
+	private int numberOfGenerators;
 	
 	/**
 	 * Setup gerbil resource
@@ -104,10 +169,11 @@ public class QaBenchmark extends AbstractBenchmarkController {
     public void init() throws Exception {
     	
     	startTime = System.currentTimeMillis(); // a variable to carry starting time
-    	Configurator.setRootLevel(Level.ALL); // setup logger
-    	
     	LOGGER.info("QaBenchmark: Initializing.");
     	super.init(); // call initialization function in super class
+    	Metrics.startServer(System.getenv());
+    	SparqlHttpClient.install(System.getenv(), SparqlHttpClient.DEFAULT_MAX_CONNECTIONS, AnswerResolver.DEFAULT_QUERY_TIMEOUT);
+    	Metrics.gauge("generator_kpis", () -> generatorKpis.size());
     	experimentType = ExperimentType.QA; // set experiment type to Question Answering
     	LOGGER.info("QaBenchmark: Loading parameters from benchmark model.");
         
@@ -286,6 +352,183 @@ public class QaBenchmark extends AbstractBenchmarkController {
         	LOGGER.info("QaBenchmark: Setting time for answering one question set to default value: \""+timeForAnswering+"\"");
         }
         
+        //load dispatch mode from benchmark model, ramp by default
+        dispatchMode = QaTaskGenerator.RAMP_DISPATCH;
+        iterator = benchmarkParamModel.listObjectsOfProperty(benchmarkParamModel.getProperty(gerbilQaUri+"hasDispatchMode"));
+        if (iterator.hasNext()) {
+            try {
+            	Resource resource = iterator.next().asResource();
+            	if (resource == null) {
+            		throw this.localError("QaBenchmark: Got null resource.");
+            	}else {
+            		String uri = resource.getURI();
+            		if (RAMP_DISPATCH.getURI().equals(uri)) {
+            			dispatchMode = QaTaskGenerator.RAMP_DISPATCH;
+            		}else if (OPEN_LOOP_DISPATCH.getURI().equals(uri)) {
+            			dispatchMode = QaTaskGenerator.OPEN_LOOP_DISPATCH;
+            		}else if (ADAPTIVE_DISPATCH.getURI().equals(uri)) {
+            			dispatchMode = QaTaskGenerator.ADAPTIVE_DISPATCH;
+            		}else {
+            			throw this.localError("QaBenchmark: The dispatch mode is not supported.");
+            		}
+            		LOGGER.info("QaBenchmark: Got dispatch mode from the parameter model: \""+dispatchMode+"\"");
+            	}
+            } catch (Exception e) {
+                LOGGER.error("QaBenchmark: Exception while parsing parameter.\n", e);
+            }
+        }
+        //only the largescale testing sets grow, with a question per set the adaptive ramp would never raise the load
+        if (dispatchMode.equals(QaTaskGenerator.ADAPTIVE_DISPATCH)
+        		&& !(experimentTaskName.equalsIgnoreCase(_LARGESCALE) && experimentDataset.equalsIgnoreCase("testing"))) {
+        	LOGGER.error("QaBenchmark: Adaptive dispatch needs growing question sets, which only the largescale testing experiment has. Using ramp dispatch.");
+        	dispatchMode = QaTaskGenerator.RAMP_DISPATCH;
+        }
+        
+        //load arrival process parameters from benchmark model (open-loop dispatch)
+        if (dispatchMode.equals(QaTaskGenerator.OPEN_LOOP_DISPATCH)) {
+        	arrivalProcess = ArrivalProcess.POISSON;
+        	iterator = benchmarkParamModel.listObjectsOfProperty(benchmarkParamModel.getProperty(gerbilQaUri+"hasArrivalProcess"));
+        	if (iterator.hasNext()) {
+        		try {
+        			String uri = iterator.next().asResource().getURI();
+        			if (POISSON_ARRIVAL.getURI().equals(uri)) {
+        				arrivalProcess = ArrivalProcess.POISSON;
+        			}else if (CONSTANT_ARRIVAL.getURI().equals(uri)) {
+        				arrivalProcess = ArrivalProcess.CONSTANT;
+        			}else if (BURST_ARRIVAL.getURI().equals(uri)) {
+        				arrivalProcess = ArrivalProcess.BURST;
+        			}else if (STEP_ARRIVAL.getURI().equals(uri)) {
+        				arrivalProcess = ArrivalProcess.STEP;
+        			}else {
+        				throw this.localError("QaBenchmark: The arrival process is not supported.");
+        			}
+        		} catch (Exception e) {
+        			LOGGER.error("QaBenchmark: Exception while parsing parameter.\n", e);
+        		}
+        	}
+        	LOGGER.info("QaBenchmark: Arrival process: \""+arrivalProcess+"\"");
+        	
+        	arrivalRate = 1;
+        	iterator = benchmarkParamModel.listObjectsOfProperty(benchmarkParamModel.getProperty(gerbilQaUri+"hasArrivalRate"));
+        	if (iterator.hasNext()) {
+        		try {
+        			arrivalRate = iterator.next().asLiteral().getDouble();
+        		} catch (Exception e) {
+        			LOGGER.error("QaBenchmark: Exception while parsing parameter.", e);
+        		}
+        	}
+        	if (arrivalRate <= 0) {
+        		LOGGER.error("QaBenchmark: Arrival rate must be positive. Using default value.");
+        		arrivalRate = 1;
+        	}
+        	LOGGER.info("QaBenchmark: Arrival rate: \""+arrivalRate+"\" questions per second");
+        	
+        	burstSize = 10;
+        	iterator = benchmarkParamModel.listObjectsOfProperty(benchmarkParamModel.getProperty(gerbilQaUri+"hasBurstSize"));
+        	if (iterator.hasNext()) {
+        		try {
+        			burstSize = iterator.next().asLiteral().getInt();
+        		} catch (Exception e) {
+        			LOGGER.error("QaBenchmark: Exception while parsing parameter.", e);
+        		}
+        	}
+        	
+        	stepDuration = timeForAnswering;
+        	iterator = benchmarkParamModel.listObjectsOfProperty(benchmarkParamModel.getProperty(gerbilQaUri+"hasStepDuration"));
+        	if (iterator.hasNext()) {
+        		try {
+        			stepDuration = iterator.next().asLiteral().getLong();
+        		} catch (Exception e) {
+        			LOGGER.error("QaBenchmark: Exception while parsing parameter.", e);
+        		}
+        	}
+        	LOGGER.info("QaBenchmark: Burst size: \""+burstSize+"\", step duration: \""+stepDuration+"\"");
+        }
+        
+        //load saturation thresholds from benchmark model (adaptive dispatch)
+        if (dispatchMode.equals(QaTaskGenerator.ADAPTIVE_DISPATCH)) {
+        	latencyThreshold = timeForAnswering;
+        	iterator = benchmarkParamModel.listObjectsOfProperty(benchmarkParamModel.getProperty(gerbilQaUri+"hasLatencyThreshold"));
+        	if (iterator.hasNext()) {
+        		try {
+        			latencyThreshold = iterator.next().asLiteral().getLong();
+        		} catch (Exception e) {
+        			LOGGER.error("QaBenchmark: Exception while parsing parameter.", e);
+        		}
+        	}
+        	errorThreshold = 0.05;
+        	iterator = benchmarkParamModel.listObjectsOfProperty(benchmarkParamModel.getProperty(gerbilQaUri+"hasErrorThreshold"));
+        	if (iterator.hasNext()) {
+        		try {
+        			errorThreshold = iterator.next().asLiteral().getDouble();
+        		} catch (Exception e) {
+        			LOGGER.error("QaBenchmark: Exception while parsing parameter.", e);
+        		}
+        	}
+        	LOGGER.info("QaBenchmark: Latency threshold: \""+latencyThreshold+"\", error threshold: \""+errorThreshold+"\"");
+        }
+        
+        //load number of generators from benchmark model
+        numberOfGenerators = DEFAULT_NUMBER_OF_GENERATORS;
+        iterator = benchmarkParamModel.listObjectsOfProperty(benchmarkParamModel.getProperty(gerbilQaUri+"hasNumberOfGenerators"));
+        if(iterator.hasNext()) {
+        	try {
+        		numberOfGenerators = iterator.next().asLiteral().getInt();
+        		LOGGER.info("QaBenchmark: Got number of generators from the parameter model: \""+numberOfGenerators+"\"");
+        	} catch (Exception e) {
+        		LOGGER.error("QaBenchmark: Exception while parsing parameter.", e);
+        	}
+        }
+        if (numberOfGenerators < 1) {
+        	LOGGER.error("QaBenchmark: Number of generators must be positive. Using default value.");
+        	numberOfGenerators = DEFAULT_NUMBER_OF_GENERATORS;
+        }
+        //the adaptive ramp decides on the answers of all questions of a set, so a single task generator has to send them
+        if (numberOfGenerators > 1 && dispatchMode.equals(QaTaskGenerator.ADAPTIVE_DISPATCH)) {
+        	LOGGER.error("QaBenchmark: Adaptive dispatch needs a single task generator. Using one generator.");
+        	numberOfGenerators = 1;
+        }
+        
+        //load evaluation module from benchmark model, the external one by default
+        evaluationModuleImage = EVALUATION_MODULE_CONTAINER_IMAGE;
+        iterator = benchmarkParamModel.listObjectsOfProperty(benchmarkParamModel.getProperty(gerbilQaUri+"hasEvaluationModule"));
+        if (iterator.hasNext()) {
+            try {
+            	Resource resource = iterator.next().asResource();
+            	if (resource == null) {
+            		throw this.localError("QaBenchmark: Got null resource.");
+            	}else {
+            		String uri = resource.getURI();
+            		if (EXTERNAL_EVALUATION.getURI().equals(uri)) {
+            			evaluationModuleImage = EVALUATION_MODULE_CONTAINER_IMAGE;
+            		}else if (BUILTIN_EVALUATION.getURI().equals(uri)) {
+            			evaluationModuleImage = BUILTIN_EVALUATION_MODULE_CONTAINER_IMAGE;
+            		}else {
+            			throw this.localError("QaBenchmark: The evaluation module is not supported.");
+            		}
+            		LOGGER.info("QaBenchmark: Got evaluation module from the parameter model: \""+evaluationModuleImage+"\"");
+            	}
+            } catch (Exception e) {
+                LOGGER.error("QaBenchmark: Exception while parsing parameter.\n", e);
+            }
+        }
+        
+        //load incremental evaluation from benchmark model, the built-in evaluation module is started with the other components and scores the responses during the run
+        incrementalEvaluation = false;
+        iterator = benchmarkParamModel.listObjectsOfProperty(benchmarkParamModel.getProperty(gerbilQaUri+"hasIncrementalEvaluation"));
+        if(iterator.hasNext()) {
+        	try {
+        		incrementalEvaluation = iterator.next().asLiteral().getBoolean();
+        		LOGGER.info("QaBenchmark: Got incremental evaluation from the parameter model: \""+incrementalEvaluation+"\"");
+        	} catch (Exception e) {
+        		LOGGER.error("QaBenchmark: Exception while parsing parameter.", e);
+        	}
+        }
+        if (incrementalEvaluation && !evaluationModuleImage.equals(BUILTIN_EVALUATION_MODULE_CONTAINER_IMAGE)) {
+        	LOGGER.error("QaBenchmark: An incremental evaluation needs the built-in evaluation module. Not using it.");
+        	incrementalEvaluation = false;
+        }
+        
         //load seed from benchmark model
         seed = -1;
         iterator = benchmarkParamModel.listObjectsOfProperty(benchmarkParamModel.getProperty("http://w3id.org/gerbil/qa/hobbit/vocab#hasSeed"));
@@ -315,13 +558,25 @@ public class QaBenchmark extends AbstractBenchmarkController {
                 LOGGER.error("QaBenchmark: Exception while parsing parameter.", e);
             }
         }
-        //check SparqlService
-        try{
-		    String query = "PREFIX dbo: <http://dbpedia.org/ontology/> PREFIX dbr: <http://dbpedia.org/resource/> ask where { dbr:DBpedia dbo:license dbr:GNU_General_Public_License . }";
-		    QueryExecution qexec = QueryExecutionFactory.sparqlService(sparqlService, query);
-		    qexec.execAsk();
-        }catch(Exception e){
-        	throw this.localError("QaBenchmark: SPARQL service not accessible. Aborting.",e);
+        /*
+         * The probe of the SPARQL service runs in the background while the components are created.
+         * The components are created one after another, since the container requests of the controller
+         * share one response queue and would mix up the container names if they overlapped.
+         */
+        ExecutorService probe = Executors.newSingleThreadExecutor();
+        Future<?> probeResult = null;
+        
+        //check SparqlService, offline runs answer the queries from a dump or a file of pre-resolved answers instead
+        if(System.getenv().containsKey(QaDataGenerator.OFFLINE_DUMP_PARAMETER_KEY)
+        		|| System.getenv().containsKey(QaDataGenerator.OFFLINE_ANSWERS_PARAMETER_KEY)) {
+        	LOGGER.info("QaBenchmark: Offline run, not checking the SPARQL service.");
+        }else {
+        	probeResult = probe.submit(() -> {
+        		long start = System.nanoTime();
+        		this.probeSparqlService();
+        		this.endPhase("sparql_probe", start);
+        		return null;
+        	});
         }
 
         //create data generator
@@ -337,8 +592,28 @@ public class QaBenchmark extends AbstractBenchmarkController {
                 QaDataGenerator.DATASET_PARAMETER_KEY + "=" + experimentDataset,
                 QaDataGenerator.NUMBER_OF_TRIPLES_PARAMETER_KEY +"=" + numberOfTriples
                 };
+        //Pass optional tuning parameters that are set on the controller
+        envVariables = this.withControllerEnv(envVariables,
+        		QaDataGenerator.SPARQL_WORKERS_PARAMETER_KEY,
+        		QaDataGenerator.SPARQL_MAX_IN_FLIGHT_PARAMETER_KEY,
+        		QaDataGenerator.SPARQL_QUERY_TIMEOUT_PARAMETER_KEY,
+        		QaDataGenerator.ANSWER_CACHE_FILE_PARAMETER_KEY,
+        		QaDataGenerator.ANSWER_CACHE_TTL_PARAMETER_KEY,
+        		QaDataGenerator.SAMPLING_MODE_PARAMETER_KEY,
+        		QaDataGenerator.STREAMING_RESERVOIR_PARAMETER_KEY,
+        		QaDataGenerator.BATCH_SIZE_PARAMETER_KEY,
+        		QaDataGenerator.BATCH_BYTES_PARAMETER_KEY,
+        		QaDataGenerator.BATCH_LINGER_PARAMETER_KEY,
+        		QaDataGenerator.PAYLOAD_CODEC_PARAMETER_KEY,
+        		QaDataGenerator.OFFLINE_DUMP_PARAMETER_KEY,
+        		QaDataGenerator.OFFLINE_ANSWERS_PARAMETER_KEY,
+        		SparqlHttpClient.MAX_CONNECTIONS_PARAMETER_KEY,
+        		Metrics.PORT_PARAMETER_KEY,
+        		LOG_LEVEL_PARAMETER_KEY);
         //Create data generator
-        createDataGenerators(DATA_GENERATOR_CONTAINER_IMAGE, NUMBER_OF_GENERATORS, envVariables);
+        long phase = System.nanoTime();
+        createDataGenerators(DATA_GENERATOR_CONTAINER_IMAGE, numberOfGenerators, envVariables);
+        phase = this.endPhase("data_generators", phase);
 
         //create task generator
         LOGGER.info("QaBenchmark: Creating Task Generator "+TASK_GENERATOR_CONTAINER_IMAGE+".");
@@ -351,16 +626,70 @@ public class QaBenchmark extends AbstractBenchmarkController {
 				QaTaskGenerator.SEED_PARAMETER_KEY + "=" + seed,
 				QaTaskGenerator.DATASET_PARAMETER_KEY + "=" + experimentDataset
 				};
+        if (dispatchMode.equals(QaTaskGenerator.OPEN_LOOP_DISPATCH)) {
+        	envVariables = this.withEnv(envVariables,
+        			QaTaskGenerator.DISPATCH_MODE_PARAMETER_KEY + "=" + dispatchMode,
+        			QaTaskGenerator.ARRIVAL_PROCESS_PARAMETER_KEY + "=" + arrivalProcess,
+        			QaTaskGenerator.ARRIVAL_RATE_PARAMETER_KEY + "=" + arrivalRate,
+        			QaTaskGenerator.BURST_SIZE_PARAMETER_KEY + "=" + burstSize,
+        			QaTaskGenerator.STEP_DURATION_PARAMETER_KEY + "=" + stepDuration);
+        }else if (dispatchMode.equals(QaTaskGenerator.ADAPTIVE_DISPATCH)) {
+        	envVariables = this.withEnv(envVariables,
+        			QaTaskGenerator.DISPATCH_MODE_PARAMETER_KEY + "=" + dispatchMode,
+        			QaTaskGenerator.LATENCY_THRESHOLD_PARAMETER_KEY + "=" + latencyThreshold,
+        			QaTaskGenerator.ERROR_THRESHOLD_PARAMETER_KEY + "=" + errorThreshold);
+        }
+        //the built-in evaluation module scores every question set
+        if (evaluationModuleImage.equals(BUILTIN_EVALUATION_MODULE_CONTAINER_IMAGE)) {
+        	envVariables = this.withEnv(envVariables,
+        			QaTaskGenerator.TAGGED_ANSWERS_PARAMETER_KEY + "=true");
+        }
+        envVariables = this.withControllerEnv(envVariables,
+        		QaTaskGenerator.PIPELINED_DISPATCH_PARAMETER_KEY,
+        		QaDataGenerator.PAYLOAD_CODEC_PARAMETER_KEY,
+        		Metrics.PORT_PARAMETER_KEY,
+        		LOG_LEVEL_PARAMETER_KEY);
       //create task generator
-        createTaskGenerators(TASK_GENERATOR_CONTAINER_IMAGE, NUMBER_OF_GENERATORS, envVariables);
+        createTaskGenerators(TASK_GENERATOR_CONTAINER_IMAGE, numberOfGenerators, envVariables);
+        phase = this.endPhase("task_generators", phase);
+
+        //track the sent tasks with the acknowledgements of the stored responses
+        taskTimeout = experimentTaskName.equalsIgnoreCase(_LARGESCALE) ? 60000 : 600000;
+        if(System.getenv().containsKey(TASK_TIMEOUT_PARAMETER_KEY)) {
+        	try {
+        		taskTimeout = Long.parseLong(System.getenv().get(TASK_TIMEOUT_PARAMETER_KEY));
+        		LOGGER.info("QaBenchmark: Got task timeout from the environment parameters: \""+taskTimeout+"\"");
+        	} catch (NumberFormatException e) {
+        		LOGGER.error("QaBenchmark: Exception while parsing parameter.", e);
+        	}
+        }
+        taskTracker = new TaskTracker(taskTimeout);
+        Metrics.gauge("tasks_outstanding", () -> taskTracker.getOutstanding());
+        ackListener = new AckListener(cmdChannel.getConnection().createChannel(),
+        		this.generateSessionQueueName(Constants.HOBBIT_ACK_EXCHANGE_NAME), taskTracker);
 
         //create evaluation storage
         LOGGER.info("QaBenchmark: Creating Default Evaluation Storage "+DEFAULT_EVAL_STORAGE_IMAGE+".");
-        createEvaluationStorage();
+        //the task generators measure latencies with the acknowledgements of the stored responses
+        createEvaluationStorage(DEFAULT_EVAL_STORAGE_IMAGE, new String[] { Constants.ACKNOWLEDGEMENT_FLAG_KEY + "=true" });
+        phase = this.endPhase("evaluation_storage", phase);
+
+        //the incremental evaluation module scores the responses during the run, until it gets the signal that the system finished
+        if (incrementalEvaluation) {
+        	LOGGER.info("QaBenchmark: Creating incremental Evaluation Module "+evaluationModuleImage+".");
+        	createEvaluationModule(evaluationModuleImage, this.withEnv(this.evaluationModuleEnv(),
+        			QaEvaluationModule.INCREMENTAL_PARAMETER_KEY + "=true"));
+        	phase = this.endPhase("evaluation_module", phase);
+        }
+
+        //wait for the probe of the SPARQL service
+        this.awaitProbe(probe, probeResult);
 
         //wait for all components to finish their initialization
         LOGGER.info("QaBenchmark: Waiting for components to finish their initialization.");
+        phase = System.nanoTime();
         waitForComponentsToInitialize();
+        this.endPhase("components_initialization", phase);
         
         LOGGER.info("QaBenchmark: Initialized.");
     }
@@ -372,6 +701,7 @@ public class QaBenchmark extends AbstractBenchmarkController {
     protected void executeBenchmark() throws Exception {
 		LOGGER.info("QaBenchmark: Executing benchmark.");
 
+		long phase = System.nanoTime();
 		//Send signals to Data generator and Task generator
 		sendToCmdQueue(Commands.DATA_GENERATOR_START_SIGNAL);
         sendToCmdQueue(Commands.TASK_GENERATOR_START_SIGNAL);
@@ -381,23 +711,43 @@ public class QaBenchmark extends AbstractBenchmarkController {
         //Wait Data generator and Task generator to finish
         waitForDataGenToFinish();
         waitForTaskGenToFinish();
+        phase = this.endPhase("generation", phase);
         
-        LOGGER.info("QaBenchmark: Waiting for System to finish.");
-        if(experimentTaskName.equalsIgnoreCase(_LARGESCALE)){
-        	waitForSystemToFinish(60000); //wait up to 1 more minute
-        }else{
-        	waitForSystemToFinish(600000); //wait up to 10 more minutes
+        LOGGER.info("QaBenchmark: Waiting for System to answer "+taskTracker.getOutstanding()+" outstanding tasks.");
+        // a system which terminates ends the wait as well
+        Thread systemWatch = new Thread(() -> {
+        	waitForSystemToFinish(taskTimeout);
+        	taskTracker.stop();
+        }, "qa-system-watch");
+        systemWatch.setDaemon(true);
+        systemWatch.start();
+        if(taskTracker.awaitCompletion(taskTimeout)) {
+        	LOGGER.info("QaBenchmark: All "+taskTracker.getSent()+" tasks are answered or timed out, "+taskTracker.getTimedOut()+" timed out.");
+        }else {
+        	LOGGER.info("QaBenchmark: Stopped waiting for the System with "+taskTracker.getOutstanding()+" of "+taskTracker.getSent()+" tasks outstanding.");
         }
+        phase = this.endPhase("system", phase);
         
-        LOGGER.info("QaBenchmark: Creating Evaluation Module "+EVALUATION_MODULE_CONTAINER_IMAGE+" and waiting for evaluation components to finish.");
-        
-        // Create evaluation model container
-        createEvaluationModule(EVALUATION_MODULE_CONTAINER_IMAGE,
-        		new String[] { "QAexperimentType=" + experimentType.name(),
-        				"QAsparqlService="+sparqlService});
+        if (incrementalEvaluation) {
+        	LOGGER.info("QaBenchmark: Sending the last pass signal to the incremental Evaluation Module and waiting for evaluation components to finish.");
+        	sendToCmdQueue(QaCommands.EVALUATION_START);
+        }else {
+        	LOGGER.info("QaBenchmark: Creating Evaluation Module "+evaluationModuleImage+" and waiting for evaluation components to finish.");
+        	// Create evaluation model container
+        	createEvaluationModule(evaluationModuleImage, this.evaluationModuleEnv());
+        }
         
         // Wait evaluation model to finish
         waitForEvalComponentsToFinish();
+        this.endPhase("evaluation", phase);
+        
+        // Add the KPIs of the generators
+        this.addDispatchJitter();
+        synchronized (generatorKpis) {
+        	for(Map.Entry<String, Double> kpi:generatorKpis.entrySet())
+        		this.resultModel.addLiteral(experiment(), this.resultModel.createProperty(gerbilQaUri+kpi.getKey()), kpi.getValue().doubleValue());
+        }
+        this.addLatencies(experiment());
         
         // Send the results
         LOGGER.info("QaBenchmark: Sending result model.");
@@ -406,6 +756,157 @@ public class QaBenchmark extends AbstractBenchmarkController {
         LOGGER.info("QaBenchmark: Benchmark executed.");
     }
 	
+	/**
+	 * Collects the KPIs sent by the generators, other commands are handled by the super class.
+	 */
+	@Override
+	public void receiveCommand(byte command, byte[] data) {
+		if (command == QaCommands.KPI) {
+			String name = QaCommands.kpiName(data);
+			double value = QaCommands.kpiValue(data);
+			// every task generator reports its own value, the result has the largest one
+			generatorKpis.merge(name, value, Math::max);
+			Metrics.counter("kpis_received").increment();
+			LOGGER.info("QaBenchmark: Got KPI \""+name+"\" = "+value+".");
+		}else if (command == QaCommands.DISPATCH_JITTER) {
+			synchronized (this) {
+				int sets = QaCommands.dispatchJitterSets(data);
+				jitterSets += sets;
+				jitterSum += sets*(double) QaCommands.dispatchJitterMean(data);
+				maxJitter = Math.max(maxJitter, QaCommands.dispatchJitterMax(data));
+			}
+		}else if (command == QaCommands.TASKS_SENT) {
+			if (taskTracker != null)
+				taskTracker.sent(QaCommands.tasksSentIds(data));
+		}else if (command == QaCommands.LATENCY) {
+			Metrics.counter("latency_reports_received").increment();
+			int set = QaCommands.latencySet(data);
+			synchronized (latencies) {
+				LatencyHistogram histogram = latencies.get(set);
+				if (histogram == null) {
+					histogram = new LatencyHistogram();
+					latencies.put(set, histogram);
+					unanswered.put(set, 0);
+				}
+				histogram.merge(QaCommands.latencyHistogram(data));
+				unanswered.put(set, unanswered.get(set)+QaCommands.latencyUnanswered(data));
+			}
+		}else {
+			super.receiveCommand(command, data);
+		}
+	}
+	
+	/**
+	 * Records the duration of a phase of the benchmark.
+	 * @param name : name of the phase
+	 * @param start : {@link System#nanoTime()} at the start of the phase
+	 * @return start of the next phase
+	 */
+	private long endPhase(String name, long start) {
+		long end = System.nanoTime();
+		Metrics.timer("phase_"+name).record(end-start);
+		LOGGER.info("QaBenchmark: Phase "+name+" took "+TimeUnit.NANOSECONDS.toMillis(end-start)+" ms.");
+		return end;
+	}
+	
+	/**
+	 * Waits for the probe of the SPARQL service, a failed probe fails the startup.
+	 * @param executor : runs the probe
+	 * @param probe : future of the probe, null if the service isn't probed
+	 * @throws Exception
+	 */
+	private void awaitProbe(ExecutorService executor, Future<?> probe) throws Exception {
+		try {
+			if (probe != null)
+				probe.get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Checks that the SPARQL service answers an ASK query.
+	 * Every probe has a timeout, a failed probe is repeated with a doubling backoff.
+	 * @throws Exception if the service doesn't answer any probe
+	 */
+	private void probeSparqlService() throws Exception {
+		long timeout = DEFAULT_PROBE_TIMEOUT;
+		int attempts = DEFAULT_PROBE_ATTEMPTS;
+		try {
+			if (System.getenv().containsKey(PROBE_TIMEOUT_PARAMETER_KEY))
+				timeout = Long.parseLong(System.getenv().get(PROBE_TIMEOUT_PARAMETER_KEY));
+			if (System.getenv().containsKey(PROBE_ATTEMPTS_PARAMETER_KEY))
+				attempts = Math.max(1, Integer.parseInt(System.getenv().get(PROBE_ATTEMPTS_PARAMETER_KEY)));
+		} catch (NumberFormatException e) {
+			LOGGER.error("QaBenchmark: Exception while parsing parameter.", e);
+		}
+		String query = "PREFIX dbo: <http://dbpedia.org/ontology/> PREFIX dbr: <http://dbpedia.org/resource/> ask where { dbr:DBpedia dbo:license dbr:GNU_General_Public_License . }";
+		long backoff = PROBE_BACKOFF;
+		for (int attempt = 1; ; attempt++) {
+			try (QueryExecution qexec = SparqlHttpClient.query(sparqlService, QueryFactory.create(query))) {
+				qexec.setTimeout(timeout, timeout);
+				qexec.execAsk();
+				LOGGER.info("QaBenchmark: SPARQL service is accessible.");
+				return;
+			} catch (Exception e) {
+				if (attempt >= attempts)
+					throw this.localError("QaBenchmark: SPARQL service not accessible. Aborting.", e);
+				LOGGER.warn("QaBenchmark: SPARQL service not accessible (probe {} of {}), retrying in {} ms.", attempt, attempts, backoff);
+				Thread.sleep(backoff);
+				backoff *= 2;
+			}
+		}
+	}
+	
+	/**
+	 * @return the experiment resource of the result model
+	 */
+	private Resource experiment() {
+		return this.resultModel.createResource(experimentUri);
+	}
+	
+	/**
+	 * Adds the dispatch jitter KPIs (in ms) to the KPIs of the generators:
+	 * the mean over the sets of all task generators and the maximum.
+	 */
+	private synchronized void addDispatchJitter() {
+		if (jitterSets == 0)
+			return;
+		double nanosPerMilli = TimeUnit.MILLISECONDS.toNanos(1);
+		generatorKpis.put(QaTaskGenerator.MEAN_DISPATCH_JITTER_KPI, jitterSum/jitterSets/nanosPerMilli);
+		generatorKpis.put(QaTaskGenerator.MAX_DISPATCH_JITTER_KPI, maxJitter/nanosPerMilli);
+	}
+	
+	/**
+	 * Adds the latency KPIs (in ms) to the result model:
+	 * the percentiles of all questions to the experiment, those of every question set to a node per set.
+	 * @param experiment : the experiment resource
+	 */
+	private void addLatencies(Resource experiment) {
+		synchronized (latencies) {
+			for (Map.Entry<Integer, LatencyHistogram> entry : latencies.entrySet()) {
+				Resource target = experiment;
+				if (entry.getKey() >= 0) {
+					target = this.resultModel.createResource();
+					this.resultModel.add(experiment, this.resultModel.createProperty(gerbilQaUri+"hasSetLatency"), target);
+					this.resultModel.addLiteral(target, this.resultModel.createProperty(gerbilQaUri+"questionSet"), (long) entry.getKey());
+				}
+				LatencyHistogram histogram = entry.getValue();
+				this.addLatency(target, "latencyP50", histogram.getValueAtPercentile(50));
+				this.addLatency(target, "latencyP90", histogram.getValueAtPercentile(90));
+				this.addLatency(target, "latencyP99", histogram.getValueAtPercentile(99));
+				this.addLatency(target, "latencyMax", histogram.getMax());
+				this.resultModel.addLiteral(target, this.resultModel.createProperty(gerbilQaUri+"unansweredQuestions"), (long) unanswered.get(entry.getKey()));
+			}
+		}
+	}
+	
+	private void addLatency(Resource target, String name, long nanos) {
+		this.resultModel.addLiteral(target, this.resultModel.createProperty(gerbilQaUri+name), nanos/(double) TimeUnit.MILLISECONDS.toNanos(1));
+	}
+	
 	/**
 	 * Calls super.close() Method and logs Closing-Information.
 	 */
@@ -413,10 +914,61 @@ public class QaBenchmark extends AbstractBenchmarkController {
     public void close() throws IOException {
 		LOGGER.info("QaBenchmark: Duration -> "+(System.currentTimeMillis() - startTime));
 		LOGGER.info("QaBenchmark: Closing.");
+		Metrics.close("QaBenchmark");
+		SparqlHttpClient.close();
+		if (ackListener != null)
+			ackListener.close();
 		super.close();
         LOGGER.info("QaBenchmark: Closed.");
     }
 	
+	/**
+	 * @return environment variables of the evaluation module
+	 */
+	private String[] evaluationModuleEnv() {
+		String[] envVariables = new String[] { "QAexperimentType=" + experimentType.name(),
+				"QAsparqlService="+sparqlService};
+		if (evaluationModuleImage.equals(BUILTIN_EVALUATION_MODULE_CONTAINER_IMAGE)) {
+			envVariables = this.withEnv(envVariables,
+					QaTaskGenerator.TAGGED_ANSWERS_PARAMETER_KEY + "=true");
+			envVariables = this.withControllerEnv(envVariables,
+					Metrics.PORT_PARAMETER_KEY,
+					LOG_LEVEL_PARAMETER_KEY);
+		}
+		return envVariables;
+	}
+	
+	/**
+	 * Appends environment variables to the ones of a component.
+	 * @param envVariables : environment variables of the component
+	 * @param variables : additional variables (key=value)
+	 * @return the extended environment variables
+	 */
+	private String[] withEnv(String[] envVariables,String... variables) {
+		String[] extended = Arrays.copyOf(envVariables, envVariables.length+variables.length);
+		System.arraycopy(variables, 0, extended, envVariables.length, variables.length);
+		return extended;
+	}
+	
+	/**
+	 * Appends the given keys to the environment variables of a component,
+	 * if they are set in the environment of the controller.
+	 * @param envVariables : environment variables of the component
+	 * @param keys : optional parameter keys
+	 * @return the extended environment variables
+	 */
+	private String[] withControllerEnv(String[] envVariables,String... keys) {
+		List<String> variables = new ArrayList<String>(Arrays.asList(envVariables));
+		Map<String, String> env = System.getenv();
+		for(String key:keys) {
+			if(env.containsKey(key)) {
+				variables.add(key+"="+env.get(key));
+				LOGGER.info("QaBenchmark: Passing \""+key+"\" from the controller environment.");
+			}
+		}
+		return variables.toArray(new String[variables.size()]);
+	}
+	
 	/**
 	 * Customized error
 	 * @param msg
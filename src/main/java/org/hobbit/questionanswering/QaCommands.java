@@ -0,0 +1,204 @@
+package org.hobbit.questionanswering;
+
+import java.nio.ByteBuffer;
+
+import org.hobbit.core.rabbit.RabbitMQUtils;
+import org.hobbit.questionanswering.helper.LatencyHistogram;
+
+/**
+ * Commands the QA benchmark components exchange over the command queue, in addition to {@link org.hobbit.core.Commands}.
+ */
+public final class QaCommands {
+
+	/**
+	 * A KPI measured by a generator, which the benchmark controller adds to the result model.
+	 * Data: name of the KPI and its value.
+	 */
+	public static final byte KPI = (byte) 101;
+
+	/**
+	 * Number of questions a task generator received so far, sent if there are several task generators.
+	 * Data: id of the task generator and the number of questions.
+	 */
+	public static final byte TASKS_RECEIVED = (byte) 102;
+
+	/**
+	 * Response latencies a task generator measured for a question set, or for all questions if the set is -1.
+	 * Data: index of the set, number of unanswered questions and the {@link org.hobbit.questionanswering.helper.LatencyHistogram}.
+	 */
+	public static final byte LATENCY = (byte) 103;
+
+	/**
+	 * Tells an incremental evaluation module to make its last pass, sent by the benchmark controller once the system finished.
+	 * No data.
+	 */
+	public static final byte EVALUATION_START = (byte) 104;
+
+	/**
+	 * Tasks a task generator sent to the system, so the benchmark controller can wait for their answers.
+	 * Data: the ids of the tasks.
+	 */
+	public static final byte TASKS_SENT = (byte) 105;
+
+	/**
+	 * Dispatch jitter of a task generator, the difference between actual and planned send time of its question sets.
+	 * Data: the number of sent sets, mean and maximum jitter in nanoseconds.
+	 */
+	public static final byte DISPATCH_JITTER = (byte) 106;
+
+	private QaCommands() {
+	}
+
+	/**
+	 * To encode a KPI message.
+	 * @param name : local name of the KPI in the QA vocabulary
+	 * @param value : the value
+	 * @return the command data
+	 */
+	public static byte[] kpi(String name,double value) {
+		return RabbitMQUtils.writeByteArrays(new byte[][] {
+			RabbitMQUtils.writeString(name), RabbitMQUtils.writeString(String.valueOf(value)) });
+	}
+
+	/**
+	 * @param data : the command data of a KPI message
+	 * @return local name of the KPI
+	 */
+	public static String kpiName(byte[] data) {
+		return RabbitMQUtils.readString(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * @param data : the command data of a KPI message
+	 * @return value of the KPI
+	 */
+	public static double kpiValue(byte[] data) {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		RabbitMQUtils.readString(buffer);
+		return Double.parseDouble(RabbitMQUtils.readString(buffer));
+	}
+
+	/**
+	 * To encode a tasks received message.
+	 * @param generatorId : id of the task generator
+	 * @param count : number of questions received
+	 * @return the command data
+	 */
+	public static byte[] tasksReceived(int generatorId,int count) {
+		return ByteBuffer.allocate(8).putInt(generatorId).putInt(count).array();
+	}
+
+	/**
+	 * @param data : the command data of a tasks received message
+	 * @return id of the task generator
+	 */
+	public static int tasksReceivedGenerator(byte[] data) {
+		return ByteBuffer.wrap(data).getInt(0);
+	}
+
+	/**
+	 * @param data : the command data of a tasks received message
+	 * @return number of questions received
+	 */
+	public static int tasksReceivedCount(byte[] data) {
+		return ByteBuffer.wrap(data).getInt(4);
+	}
+
+	/**
+	 * To encode a tasks sent message.
+	 * @param taskIds : ids of the sent tasks
+	 * @param count : number of ids to take
+	 * @return the command data
+	 */
+	public static byte[] tasksSent(int[] taskIds,int count) {
+		ByteBuffer buffer = ByteBuffer.allocate(4*count);
+		for(int i=0;i<count;i++)
+			buffer.putInt(taskIds[i]);
+		return buffer.array();
+	}
+
+	/**
+	 * @param data : the command data of a tasks sent message
+	 * @return ids of the sent tasks
+	 */
+	public static String[] tasksSentIds(byte[] data) {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		String[] taskIds = new String[data.length/4];
+		for(int i=0;i<taskIds.length;i++)
+			taskIds[i] = String.valueOf(buffer.getInt());
+		return taskIds;
+	}
+
+	/**
+	 * To encode a dispatch jitter message.
+	 * @param sets : number of sent question sets
+	 * @param meanJitter : mean jitter in nanoseconds
+	 * @param maxJitter : maximum jitter in nanoseconds
+	 * @return the command data
+	 */
+	public static byte[] dispatchJitter(int sets,long meanJitter,long maxJitter) {
+		return ByteBuffer.allocate(20).putInt(sets).putLong(meanJitter).putLong(maxJitter).array();
+	}
+
+	/**
+	 * @param data : the command data of a dispatch jitter message
+	 * @return number of sent question sets
+	 */
+	public static int dispatchJitterSets(byte[] data) {
+		return ByteBuffer.wrap(data).getInt(0);
+	}
+
+	/**
+	 * @param data : the command data of a dispatch jitter message
+	 * @return mean jitter in nanoseconds
+	 */
+	public static long dispatchJitterMean(byte[] data) {
+		return ByteBuffer.wrap(data).getLong(4);
+	}
+
+	/**
+	 * @param data : the command data of a dispatch jitter message
+	 * @return maximum jitter in nanoseconds
+	 */
+	public static long dispatchJitterMax(byte[] data) {
+		return ByteBuffer.wrap(data).getLong(12);
+	}
+
+	/**
+	 * To encode a latency message.
+	 * @param set : index of the question set, -1 for all questions
+	 * @param unanswered : number of questions sent but not answered
+	 * @param histogram : latencies of the answered questions
+	 * @return the command data
+	 */
+	public static byte[] latency(int set,int unanswered,LatencyHistogram histogram) {
+		byte[] bytes = histogram.toBytes();
+		return ByteBuffer.allocate(8+bytes.length).putInt(set).putInt(unanswered).put(bytes).array();
+	}
+
+	/**
+	 * @param data : the command data of a latency message
+	 * @return index of the question set, -1 for all questions
+	 */
+	public static int latencySet(byte[] data) {
+		return ByteBuffer.wrap(data).getInt(0);
+	}
+
+	/**
+	 * @param data : the command data of a latency message
+	 * @return number of unanswered questions
+	 */
+	public static int latencyUnanswered(byte[] data) {
+		return ByteBuffer.wrap(data).getInt(4);
+	}
+
+	/**
+	 * @param data : the command data of a latency message
+	 * @return latencies of the answered questions
+	 */
+	public static LatencyHistogram latencyHistogram(byte[] data) {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		buffer.position(8);
+		return LatencyHistogram.fromBytes(buffer);
+	}
+}
@@ -1,16 +1,22 @@
 package org.hobbit.questionanswering;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import org.hobbit.core.components.AbstractDataGenerator;
-import org.hobbit.core.rabbit.RabbitMQUtils;
+import org.hobbit.questionanswering.helper.AnswerCache;
+import org.hobbit.questionanswering.helper.AnswerResolver;
+import org.hobbit.questionanswering.helper.LocalSparqlEndpoint;
+import org.hobbit.questionanswering.helper.MessageBatcher;
+import org.hobbit.questionanswering.helper.Metrics;
+import org.hobbit.questionanswering.helper.PayloadCodec;
 import org.hobbit.questionanswering.helper.QaHelper;
+import org.hobbit.questionanswering.helper.SparqlHttpClient;
+import org.hobbit.questionanswering.helper.TaskPayload;
 import org.apache.logging.log4j.Logger;
-import org.apache.logging.log4j.core.config.Configurator;
 import org.apache.jena.atlas.json.JsonValue;
-import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 
 /**
@@ -28,6 +34,22 @@ public class QaDataGenerator extends AbstractDataGenerator {
     public static final String SPARQL_SERVICE_PARAMETER_KEY = "qa.sparql_service";
     public static final String DATASET_PARAMETER_KEY = "qa.dataset";
     public static final String NUMBER_OF_TRIPLES_PARAMETER_KEY = "qa.number_of_triples";
+    public static final String SPARQL_WORKERS_PARAMETER_KEY = "qa.sparql_workers";
+    public static final String SPARQL_MAX_IN_FLIGHT_PARAMETER_KEY = "qa.sparql_max_in_flight";
+    public static final String SPARQL_QUERY_TIMEOUT_PARAMETER_KEY = "qa.sparql_query_timeout";
+    public static final String ANSWER_CACHE_FILE_PARAMETER_KEY = "qa.answer_cache_file";
+    public static final String ANSWER_CACHE_TTL_PARAMETER_KEY = "qa.answer_cache_ttl";
+    public static final String SAMPLING_MODE_PARAMETER_KEY = "qa.sampling_mode";
+    public static final String STREAMING_RESERVOIR_PARAMETER_KEY = "qa.streaming_reservoir_factor";
+    public static final String BATCH_SIZE_PARAMETER_KEY = "qa.batch_size";
+    public static final String BATCH_BYTES_PARAMETER_KEY = "qa.batch_bytes";
+    public static final String BATCH_LINGER_PARAMETER_KEY = "qa.batch_linger";
+    public static final String PAYLOAD_CODEC_PARAMETER_KEY = "qa.payload_codec";
+    public static final String OFFLINE_DUMP_PARAMETER_KEY = "qa.offline_dump";
+    public static final String OFFLINE_ANSWERS_PARAMETER_KEY = "qa.offline_answers";
+    
+    public static final String SAMPLING_RESOLVE_ALL = "resolve-all";
+    public static final String SAMPLING_LAZY = "lazy";
     
     public static final String LARGESCALE = "largescale";
     public static final String MULTILINGUAL = "multilingual";
@@ -43,10 +65,29 @@ public class QaDataGenerator extends AbstractDataGenerator {
     private String sparqlService;
     private String experimentDataset;
 	private int numberOfTriples;
+	private int sparqlWorkers;
+	private int sparqlMaxInFlight;
+	private long sparqlQueryTimeout;
+	private String answerCacheFile;
+	private long answerCacheTtl;
+	private String offlineDump;
+	private boolean offlineAnswers;
+	private LocalSparqlEndpoint localEndpoint;
+	private String samplingMode;
+	private int streamingReservoirFactor;
+	private int batchSize;
+	private int batchBytes;
+	private long batchLinger;
+	private PayloadCodec payloadCodec;
     
     private List<JsonValue> qaData;
+    private List<byte[]> payloads;
+    private String datasetId;
     private QaHelper qaHelper;
     private int numberOfQuestions;
+    private int totalNumberOfQuestions;
+    private int generatorId;
+    private int numberOfGenerators;
     Map<String, String> env;
     
     /**
@@ -54,12 +95,11 @@ public class QaDataGenerator extends AbstractDataGenerator {
      */
     public void init() throws Exception {
     	
-    	Configurator.setRootLevel(Level.ALL);
-    	
     	LOGGER.info("QaDataGen: Initializing.");
     	super.init();
     	//Get system environment information.
         env = System.getenv();
+        Metrics.startServer(env);
        
         /*
          * load experimentTypeName from environment
@@ -149,6 +189,18 @@ public class QaDataGenerator extends AbstractDataGenerator {
         	this.numberOfQuestions = (this.numberOfQuestionSets*(this.numberOfQuestionSets+1))/2;
         else
         	this.numberOfQuestions = this.numberOfQuestionSets;
+        this.totalNumberOfQuestions = this.numberOfQuestions;
+        
+        /*
+         * With several data generators every generator takes a disjoint share of the questions,
+         * question k of generator g gets the global index k*numberOfGenerators+g.
+         */
+        generatorId = this.getGeneratorId();
+        numberOfGenerators = this.getNumberOfGenerators();
+        if(numberOfGenerators>1) {
+        	this.numberOfQuestions = (this.numberOfQuestions-generatorId+numberOfGenerators-1)/numberOfGenerators;
+        	LOGGER.info("QaDataGen: Generator "+generatorId+" of "+numberOfGenerators+" takes "+this.numberOfQuestions+" questions.");
+        }
         
         //load seed from environment
         if(env.containsKey(SEED_PARAMETER_KEY)){
@@ -162,6 +214,10 @@ public class QaDataGenerator extends AbstractDataGenerator {
         	throw this.localErrorIllegal("QaDataGen: Couldn't get \"" + SEED_PARAMETER_KEY + "\" from the environment. Aborting.");
         }
         
+        //datasetId (hobbit_qa_1498123456789_42_largescale_training)
+        datasetId = "hobbit_qa_"+this.getHobbitSessionId()+"_"+seed+"_"+experimentTaskName.toLowerCase()+"_"+experimentDataset.toLowerCase();
+        LOGGER.info("QaDataGen: Dataset id is "+datasetId+".");
+        
         //load sparqlService from environment
         sparqlService = "";
         if(env.containsKey(SPARQL_SERVICE_PARAMETER_KEY)) {
@@ -174,13 +230,164 @@ public class QaDataGenerator extends AbstractDataGenerator {
         } else {
             throw this.localError("QaDataGen: Couldn't get \"" + SPARQL_SERVICE_PARAMETER_KEY + "\" from the properties. Aborting.");
         }
+        
+        /*
+         * load answer resolution settings from environment (optional)
+         * Without them answers are resolved one question at a time.
+         */
+        sparqlWorkers = AnswerResolver.DEFAULT_WORKERS;
+        if(env.containsKey(SPARQL_WORKERS_PARAMETER_KEY)) {
+        	try {
+        		sparqlWorkers = Integer.parseInt(env.get(SPARQL_WORKERS_PARAMETER_KEY));
+        		LOGGER.info("QaDataGen: Got number of SPARQL workers from the environment parameters: \""+sparqlWorkers+"\"");
+        	} catch (NumberFormatException e) {
+        		throw this.localErrorIllegal("QaDataGen: Exception while trying to parse the number of SPARQL workers. Aborting.", e);
+        	}
+        }
+        sparqlMaxInFlight = 2*sparqlWorkers;
+        if(env.containsKey(SPARQL_MAX_IN_FLIGHT_PARAMETER_KEY)) {
+        	try {
+        		sparqlMaxInFlight = Integer.parseInt(env.get(SPARQL_MAX_IN_FLIGHT_PARAMETER_KEY));
+        		LOGGER.info("QaDataGen: Got maximum of in-flight SPARQL queries from the environment parameters: \""+sparqlMaxInFlight+"\"");
+        	} catch (NumberFormatException e) {
+        		throw this.localErrorIllegal("QaDataGen: Exception while trying to parse the maximum of in-flight SPARQL queries. Aborting.", e);
+        	}
+        }
+        sparqlQueryTimeout = AnswerResolver.DEFAULT_QUERY_TIMEOUT;
+        if(env.containsKey(SPARQL_QUERY_TIMEOUT_PARAMETER_KEY)) {
+        	try {
+        		sparqlQueryTimeout = Long.parseLong(env.get(SPARQL_QUERY_TIMEOUT_PARAMETER_KEY));
+        		LOGGER.info("QaDataGen: Got SPARQL query timeout from the environment parameters: \""+sparqlQueryTimeout+"\"");
+        	} catch (NumberFormatException e) {
+        		throw this.localErrorIllegal("QaDataGen: Exception while trying to parse the SPARQL query timeout. Aborting.", e);
+        	}
+        }
+        
+        /*
+         * load answer cache settings from environment (optional)
+         * Without a cache file all answers are resolved against the SPARQL service.
+         */
+        answerCacheFile = null;
+        if(env.containsKey(ANSWER_CACHE_FILE_PARAMETER_KEY)) {
+        	answerCacheFile = env.get(ANSWER_CACHE_FILE_PARAMETER_KEY);
+        	LOGGER.info("QaDataGen: Got answer cache file from the environment parameters: \""+answerCacheFile+"\"");
+        }
+        answerCacheTtl = 0;
+        if(env.containsKey(ANSWER_CACHE_TTL_PARAMETER_KEY)) {
+        	try {
+        		answerCacheTtl = Long.parseLong(env.get(ANSWER_CACHE_TTL_PARAMETER_KEY));
+        		LOGGER.info("QaDataGen: Got answer cache TTL from the environment parameters: \""+answerCacheTtl+"\"");
+        	} catch (NumberFormatException e) {
+        		throw this.localErrorIllegal("QaDataGen: Exception while trying to parse the answer cache TTL. Aborting.", e);
+        	}
+        }
+        
+        /*
+         * load offline mode from environment (optional)
+         * - an RDF dump (e.g. N-Triples) answers the queries from an embedded endpoint instead of the SPARQL service
+         * - a file of pre-resolved answers (an answer cache file) is used as the answer cache, questions missing in it
+         *   have no answers unless a dump is given as well
+         * answers of a dump aren't written to the answer cache, a later online run doesn't take them for those of the service
+         */
+        offlineDump = env.get(OFFLINE_DUMP_PARAMETER_KEY);
+        if(offlineDump!=null)
+        	LOGGER.info("QaDataGen: Got offline dump from the environment parameters: \""+offlineDump+"\"");
+        offlineAnswers = env.containsKey(OFFLINE_ANSWERS_PARAMETER_KEY);
+        if(offlineAnswers) {
+        	answerCacheFile = env.get(OFFLINE_ANSWERS_PARAMETER_KEY);
+        	answerCacheTtl = 0;
+        	LOGGER.info("QaDataGen: Got offline answers from the environment parameters: \""+answerCacheFile+"\"");
+        }
+        
+        /*
+         * load sampling mode from environment (optional)
+         * Ex: resolve-all or lazy
+         */
+        samplingMode = SAMPLING_RESOLVE_ALL;
+        if(env.containsKey(SAMPLING_MODE_PARAMETER_KEY)) {
+        	samplingMode = env.get(SAMPLING_MODE_PARAMETER_KEY);
+        	if(!samplingMode.equalsIgnoreCase(SAMPLING_RESOLVE_ALL) && !samplingMode.equalsIgnoreCase(SAMPLING_LAZY))
+        		throw this.localErrorIllegal("QaDataGen: Sampling mode must be \""+SAMPLING_RESOLVE_ALL+"\" or \""+SAMPLING_LAZY+"\". Aborting.");
+        	LOGGER.info("QaDataGen: Got sampling mode from the environment parameters: \""+samplingMode+"\"");
+        }
+        
+        /*
+         * load streaming reservoir factor from environment (optional)
+         * A factor above 0 streams Json data sets in lazy sampling mode.
+         */
+        streamingReservoirFactor = 0;
+        if(env.containsKey(STREAMING_RESERVOIR_PARAMETER_KEY)) {
+        	try {
+        		streamingReservoirFactor = Integer.parseInt(env.get(STREAMING_RESERVOIR_PARAMETER_KEY));
+        		LOGGER.info("QaDataGen: Got streaming reservoir factor from the environment parameters: \""+streamingReservoirFactor+"\"");
+        	} catch (NumberFormatException e) {
+        		throw this.localErrorIllegal("QaDataGen: Exception while trying to parse the streaming reservoir factor. Aborting.", e);
+        	}
+        }
+        
+        /*
+         * load batching settings from environment (optional)
+         * Questions are sent to the task generator in batches of up to batchSize questions and batchBytes bytes (0 for no limit),
+         * a batch waits at most batchLinger ms to fill up. By default every question is sent on its own.
+         */
+        batchSize = 1;
+        batchBytes = 0;
+        batchLinger = 0;
+        try {
+        	if(env.containsKey(BATCH_SIZE_PARAMETER_KEY))
+        		batchSize = Integer.parseInt(env.get(BATCH_SIZE_PARAMETER_KEY));
+        	if(env.containsKey(BATCH_BYTES_PARAMETER_KEY))
+        		batchBytes = Integer.parseInt(env.get(BATCH_BYTES_PARAMETER_KEY));
+        	if(env.containsKey(BATCH_LINGER_PARAMETER_KEY))
+        		batchLinger = Long.parseLong(env.get(BATCH_LINGER_PARAMETER_KEY));
+        } catch (NumberFormatException e) {
+        	throw this.localErrorIllegal("QaDataGen: Exception while trying to parse the batching settings. Aborting.", e);
+        }
+        LOGGER.info("QaDataGen: Batch size "+batchSize+", batch bytes "+batchBytes+", batch linger "+batchLinger+" ms.");
+        
+        /*
+         * load payload codec from environment (optional)
+         * Ex: none or deflate, batches for the task generator are compressed with it
+         */
+        String codec = PayloadCodec.NONE;
+        if(env.containsKey(PAYLOAD_CODEC_PARAMETER_KEY)) {
+        	codec = env.get(PAYLOAD_CODEC_PARAMETER_KEY);
+        	LOGGER.info("QaDataGen: Got payload codec from the environment parameters: \""+codec+"\"");
+        }
+        try {
+        	payloadCodec = new PayloadCodec(codec);
+        } catch (IllegalArgumentException e) {
+        	throw this.localErrorIllegal("QaDataGen: Payload codec must be \""+PayloadCodec.NONE+"\" or \""+PayloadCodec.DEFLATE+"\". Aborting.", e);
+        }
 
         /*
          * load tasks (+metainfo) for chosen task type
          * It load data from .json files by using qaHelper class
          */
         LOGGER.info("QaDataGen: Loading data (+metainfo) for "+experimentTaskName+"-"+experimentDataset+".");
+        // every SPARQL worker keeps its connection to the service alive
+        SparqlHttpClient.install(env, Math.max(SparqlHttpClient.DEFAULT_MAX_CONNECTIONS, this.sparqlWorkers), this.sparqlQueryTimeout);
         qaHelper=new QaHelper(this.seed,this.numberOfQuestions,this.sparqlService);
+        qaHelper.setAnswerResolution(this.sparqlWorkers, this.sparqlMaxInFlight, this.sparqlQueryTimeout);
+        qaHelper.setLazySampling(samplingMode.equalsIgnoreCase(SAMPLING_LAZY));
+        qaHelper.setStreaming(streamingReservoirFactor);
+        if(numberOfGenerators>1)
+        	qaHelper.setPartition(generatorId, numberOfGenerators, totalNumberOfQuestions);
+        if(answerCacheFile!=null) {
+        	AnswerCache answerCache = new AnswerCache(answerCacheFile, answerCacheTtl);
+        	answerCache.load();
+        	qaHelper.setAnswerCache(answerCache);
+        }
+        if(offlineDump!=null) {
+        	try {
+        		localEndpoint = new LocalSparqlEndpoint(offlineDump);
+        	}catch(Exception e) {
+        		throw this.localError("QaDataGen: Couldn't load the offline dump. Aborting.", e);
+        	}
+        	qaHelper.setQueryService(localEndpoint.getUrl());
+        }else if(offlineAnswers) {
+        	qaHelper.setCacheOnly(true);
+        }
         try{
         	if(experimentDataset.equalsIgnoreCase(TRAINING)) {
         		switch(experimentTaskName) {
@@ -217,6 +424,18 @@ public class QaDataGenerator extends AbstractDataGenerator {
     		throw this.localError("QaDataGen: Exception while getting data (+metainfo). Aborting.", e);
     	}
         LOGGER.info("QaDataGen: "+experimentTaskName+" data is loaded.");
+        Metrics.counter("questions_loaded").add(qaData.size());
+        if(qaHelper.getAnswerCache()!=null) {
+        	AnswerCache answerCache = qaHelper.getAnswerCache();
+        	Metrics.gauge("answer_cache_hits", answerCache::getHits);
+        	Metrics.gauge("answer_cache_misses", answerCache::getMisses);
+        	LOGGER.info("QaDataGen: Answer cache hits: "+answerCache.getHits()+", misses: "+answerCache.getMisses()+".");
+        	answerCache.save();
+        }
+        if(localEndpoint!=null) {
+        	localEndpoint.close();
+        	localEndpoint = null;
+        }
         
         
         
@@ -226,6 +445,17 @@ public class QaDataGenerator extends AbstractDataGenerator {
     		LOGGER.error("QaDataGen: Chosen number of questions is too high.");
     		LOGGER.info("QaDataGen: Reducing number of questions to "+numberOfQuestions+".");
         }
+        
+        /*
+         * serialize the messages for the task generator once,
+         * it forwards their parts to the system and the evaluation storage as they are
+         */
+        payloads = new ArrayList<byte[]>(qaData.size());
+        for(int k=0;k<qaData.size();k++)
+        	payloads.add(TaskPayload.encode(k*numberOfGenerators+generatorId, qaData.get(k), datasetId));
+        qaData = null;
+        final Metrics.Counter sent = Metrics.counter("questions_sent");
+        Metrics.gauge("questions_backlog", () -> payloads.size()-sent.get());
         LOGGER.info("QaDataGen: "+this.numberOfQuestions+" questions generated.");
         LOGGER.info("QaDataGen: Initialized.");
     }
@@ -236,9 +466,15 @@ public class QaDataGenerator extends AbstractDataGenerator {
      */
     public void generateData() throws Exception{
     	LOGGER.info("QaDataGen: Generating data and sending it to the Task Generator.");
-    	for(int i=0;i<qaData.size();i++) {
-    		sendDataToTaskGenerator(RabbitMQUtils.writeString(qaData.get(i).toString()));
-    		//LOGGER.info(qaData.get(i));
+    	try(MessageBatcher batcher = new MessageBatcher(batchSize, batchBytes, batchLinger,
+    			batch -> sendDataToTaskGenerator(payloadCodec.encode(batch)))) {
+    		for(int i=0;i<payloads.size();i++) {
+    			batcher.add(payloads.get(i));
+    			Metrics.counter("questions_sent").increment();
+    		}
+    		batcher.flush();
+    		LOGGER.info("QaDataGen: "+payloads.size()+" questions sent in "+batcher.getSentBatches()+" batches.");
+    		LOGGER.info("QaDataGen: Payload encoding: "+payloadCodec.getStats()+".");
     	}
     	LOGGER.info("QaDataGen: Data Generated and sent to task generator.");
     	//sendDataToSystemAdapter(RabbitMQUtils.writeString("Test"));
@@ -249,6 +485,10 @@ public class QaDataGenerator extends AbstractDataGenerator {
      */
     public void close() throws IOException {
     	LOGGER.info("QaDataGen: Closing.");
+    	if(localEndpoint!=null)
+    		localEndpoint.close();
+    	SparqlHttpClient.close();
+    	Metrics.close("QaDataGen");
         super.close();
         LOGGER.info("QaDataGen: Closed.");
     }
@@ -0,0 +1,228 @@
+package org.hobbit.questionanswering;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonValue;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.hobbit.core.components.AbstractEvaluationModule;
+import org.hobbit.core.rabbit.RabbitMQUtils;
+import org.hobbit.questionanswering.helper.AnswerSet;
+import org.hobbit.questionanswering.helper.Metrics;
+import org.hobbit.questionanswering.helper.PayloadCodec;
+import org.hobbit.questionanswering.helper.QaldScore;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+public class QaEvaluationModule extends AbstractEvaluationModule {
+	private static final Logger LOGGER = LogManager.getLogger(QaEvaluationModule.class);
+
+	public static final String INCREMENTAL_PARAMETER_KEY = "qa.evaluation_incremental";
+
+	//time between the passes over the evaluation storage while the system runs
+	private static final long PASS_INTERVAL = 5000;
+	//the tag in front of the gold answers: question set and task
+	private static final int TAG_SIZE = 8;
+
+	private QaldScore score;
+	//the task generator may encode the gold answers with the payload codec of the data generator
+	private PayloadCodec answerCodec;
+	//scores of the question sets, if the answers are tagged with their set
+	private Map<Integer, QaldScore> setScores;
+	private boolean taggedAnswers;
+	private boolean incremental;
+	private CountDownLatch startSignal;
+	//tasks which are scored already, an incremental module sees every stored pair in each pass
+	private BitSet scoredTasks;
+	private boolean lastPass;
+	private long startNanos;
+
+	/**
+	 * Initializes the Evaluation Module.
+	 */
+	@Override
+	public void init() throws Exception {
+		LOGGER.info("QaEvalModule: Initializing.");
+		super.init();
+		Metrics.startServer(System.getenv());
+		score = new QaldScore();
+		answerCodec = new PayloadCodec(PayloadCodec.NONE);
+		setScores = new TreeMap<Integer, QaldScore>();
+		taggedAnswers = Boolean.parseBoolean(System.getenv().get(QaTaskGenerator.TAGGED_ANSWERS_PARAMETER_KEY));
+		/*
+		 * An incremental module is created with the other components and scores the answered tasks while the system runs,
+		 * only the tasks answered since its last pass are left once the system finished.
+		 */
+		incremental = Boolean.parseBoolean(System.getenv().get(INCREMENTAL_PARAMETER_KEY));
+		if(incremental && !taggedAnswers) {
+			LOGGER.error("QaEvalModule: An incremental evaluation needs tagged answers to tell the tasks apart. Not using it.");
+			incremental = false;
+		}
+		scoredTasks = new BitSet();
+		lastPass = !incremental;
+		startSignal = new CountDownLatch(incremental ? 1 : 0);
+		LOGGER.info("QaEvalModule: Initialized"+(incremental ? ", scoring the responses until the system finished." : "."));
+	}
+
+	/**
+	 * Evaluates the responses. An incremental module passes over the evaluation storage every few seconds
+	 * until {@link QaCommands#EVALUATION_START}, each pass scores the tasks answered since the last one.
+	 * The pass after the signal scores the rest, missing responses included, and summarizes the evaluation.
+	 */
+	@Override
+	public void run() throws Exception {
+		for(int pass=1;!startSignal.await(PASS_INTERVAL, TimeUnit.MILLISECONDS);pass++) {
+			long scored = score.getQuestions();
+			collectResponses();
+			LOGGER.info("QaEvalModule: Pass "+pass+" scored "+(score.getQuestions()-scored)+" responses, "+score.getQuestions()+" in total.");
+		}
+		lastPass = true;
+		startNanos = System.nanoTime();
+		super.run();
+	}
+
+	/**
+	 * Handles the end of the system run for an incremental module, other commands are handled by the super class.
+	 */
+	@Override
+	public void receiveCommand(byte command, byte[] data) {
+		if(command==QaCommands.EVALUATION_START) {
+			if(incremental)
+				LOGGER.info("QaEvalModule: The system finished, starting the last pass.");
+			startSignal.countDown();
+		}else {
+			super.receiveCommand(command, data);
+		}
+	}
+
+	/**
+	 * Compares the answers of the system with the gold answers of a task, as sets of answer hashes.
+	 * A missing or invalid response counts as an error and scores 0.
+	 * Before the last pass of an incremental module, a task without response is left for a later pass.
+	 * @param expectedData = the task in QALD format with the gold answers
+	 * @param receivedData = the response of the system in QALD format
+	 * @param taskSentTimestamp = time the task was sent to the system
+	 * @param responseReceivedTimestamp = time the response was received
+	 */
+	@Override
+	protected void evaluateResponse(byte[] expectedData, byte[] receivedData, long taskSentTimestamp,
+			long responseReceivedTimestamp) throws Exception {
+		long start = System.nanoTime();
+		int set = -1;
+		if(taggedAnswers && expectedData!=null && expectedData.length>=TAG_SIZE) {
+			ByteBuffer tag = ByteBuffer.wrap(expectedData);
+			set = tag.getInt();
+			int task = tag.getInt();
+			expectedData = Arrays.copyOfRange(expectedData, TAG_SIZE, expectedData.length);
+			boolean answered = receivedData!=null && receivedData.length>0;
+			if(task>=0 && (scoredTasks.get(task) || (!answered && !lastPass)))
+				return;
+			if(task>=0)
+				scoredTasks.set(task);
+		}else if(!lastPass) {
+			return;
+		}
+		AnswerSet gold = null;
+		try {
+			gold = expectedData==null ? null : answersOf(answerCodec.decode(expectedData));
+		}catch(IOException e) {
+			LOGGER.warn("QaEvalModule: Couldn't decode the gold answers of a task.", e);
+		}
+		if(gold==null) {
+			LOGGER.warn("QaEvalModule: Got a task without valid gold answers, skipping it.");
+			return;
+		}
+		QaldScore setScore = null;
+		if(set>=0) {
+			setScore = setScores.get(set);
+			if(setScore==null) {
+				setScore = new QaldScore();
+				setScores.put(set, setScore);
+			}
+		}
+		AnswerSet system = receivedData==null || receivedData.length==0 ? null : answersOf(receivedData);
+		if(system==null) {
+			score.addError(gold);
+			if(setScore!=null)
+				setScore.addError(gold);
+		}else {
+			double f1 = score.add(gold, system);
+			if(setScore!=null)
+				setScore.add(gold, system);
+			if(LOGGER.isDebugEnabled())
+				LOGGER.debug("QaEvalModule: {} of {} answers found, {} gold answers, F1 {}.",
+						gold.intersectionSize(system), system.size(), gold.size(), f1);
+		}
+		Metrics.timer("answer_comparison").recordSince(start);
+	}
+
+	/**
+	 * Adds the aggregated QALD measures to the result model, those of every question set to a node per set.
+	 */
+	@Override
+	protected Model summarizeEvaluation() throws Exception {
+		LOGGER.info("QaEvalModule: Scored "+score.getQuestions()+" questions, "+score.getErrors()+" errors, macro F1 "
+				+score.getMacroF1()+", micro F1 "+score.getMicroF1()+" in "+TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-startNanos)+" ms.");
+		Model model = createDefaultModel();
+		Resource experiment = model.createResource(experimentUri);
+		model.addLiteral(experiment, model.createProperty(QaBenchmark.gerbilUri+"macroPrecision"), score.getMacroPrecision());
+		model.addLiteral(experiment, model.createProperty(QaBenchmark.gerbilUri+"macroRecall"), score.getMacroRecall());
+		model.addLiteral(experiment, model.createProperty(QaBenchmark.gerbilUri+"macroF1"), score.getMacroF1());
+		model.addLiteral(experiment, model.createProperty(QaBenchmark.gerbilUri+"microPrecision"), score.getMicroPrecision());
+		model.addLiteral(experiment, model.createProperty(QaBenchmark.gerbilUri+"microRecall"), score.getMicroRecall());
+		model.addLiteral(experiment, model.createProperty(QaBenchmark.gerbilUri+"microF1"), score.getMicroF1());
+		model.addLiteral(experiment, model.createProperty(QaBenchmark.gerbilUri+"errorCount"), score.getErrors());
+		model.addLiteral(experiment, model.createProperty(QaBenchmark.gerbilQaUri+"qaldF1"), score.getQaldF1());
+		for(Map.Entry<Integer, QaldScore> entry:setScores.entrySet()) {
+			Resource target = model.createResource();
+			model.add(experiment, model.createProperty(QaBenchmark.gerbilQaUri+"hasSetScore"), target);
+			model.addLiteral(target, model.createProperty(QaBenchmark.gerbilQaUri+"questionSet"), (long) entry.getKey());
+			model.addLiteral(target, model.createProperty(QaBenchmark.gerbilUri+"macroPrecision"), entry.getValue().getMacroPrecision());
+			model.addLiteral(target, model.createProperty(QaBenchmark.gerbilUri+"macroRecall"), entry.getValue().getMacroRecall());
+			model.addLiteral(target, model.createProperty(QaBenchmark.gerbilUri+"macroF1"), entry.getValue().getMacroF1());
+			model.addLiteral(target, model.createProperty(QaBenchmark.gerbilUri+"errorCount"), entry.getValue().getErrors());
+		}
+		return model;
+	}
+
+	/**
+	 * To tag the answer data of a task with its question set and the task, for {@link QaTaskGenerator#TAGGED_ANSWERS_PARAMETER_KEY}.
+	 * @param set : index of the question set, -1 to score the task only in aggregate
+	 * @param task : index of the task, unique within the experiment
+	 * @param answer : the answer data
+	 * @return the tagged answer data
+	 */
+	public static byte[] tagAnswer(int set,int task,byte[] answer) {
+		return ByteBuffer.allocate(TAG_SIZE+answer.length).putInt(set).putInt(task).put(answer).array();
+	}
+
+	@Override
+	public void close() throws IOException {
+		LOGGER.info("QaEvalModule: Closing.");
+		if(answerCodec!=null)
+			LOGGER.info("QaEvalModule: Answer decoding: "+answerCodec.getStats()+".");
+		Metrics.close("QaEvalModule");
+		super.close();
+		LOGGER.info("QaEvalModule: Closed.");
+	}
+
+	/*
+	 * The answers of a QALD document, null if it isn't valid.
+	 */
+	private static AnswerSet answersOf(byte[] data) {
+		try {
+			JsonValue qald = JSON.parseAny(RabbitMQUtils.readString(data));
+			return qald.isObject() ? AnswerSet.fromQald(qald.getAsObject()) : null;
+		}catch(RuntimeException e) {
+			return null;
+		}
+	}
+}
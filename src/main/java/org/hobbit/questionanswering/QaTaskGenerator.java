@@ -1,16 +1,24 @@
 package org.hobbit.questionanswering;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.hobbit.core.Commands;
+import org.hobbit.core.Constants;
 import org.hobbit.core.components.AbstractTaskGenerator;
-import org.hobbit.core.rabbit.RabbitMQUtils;
-import org.hobbit.QaldBuilder;
+import org.hobbit.questionanswering.helper.AckListener;
+import org.hobbit.questionanswering.helper.ArrivalProcess;
+import org.hobbit.questionanswering.helper.LatencyHistogram;
+import org.hobbit.questionanswering.helper.Metrics;
+import org.hobbit.questionanswering.helper.PayloadCodec;
+import org.hobbit.questionanswering.helper.SetDispatcher;
+import org.hobbit.questionanswering.helper.TaskPayload;
 import org.apache.logging.log4j.Logger;
-import org.apache.logging.log4j.core.config.Configurator;
-import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 
 public class QaTaskGenerator extends AbstractTaskGenerator{
@@ -22,6 +30,21 @@ public class QaTaskGenerator extends AbstractTaskGenerator{
 	public static final String TIME_FOR_ANSWERING_PARAMETER_KEY = "qa.time_for_answering";
 	public static final String SEED_PARAMETER_KEY = "qa.seed";
 	public static final String DATASET_PARAMETER_KEY = "qa.dataset";
+	public static final String PIPELINED_DISPATCH_PARAMETER_KEY = "qa.pipelined_dispatch";
+	public static final String DISPATCH_MODE_PARAMETER_KEY = "qa.dispatch_mode";
+	public static final String ARRIVAL_PROCESS_PARAMETER_KEY = "qa.arrival_process";
+	public static final String ARRIVAL_RATE_PARAMETER_KEY = "qa.arrival_rate";
+	public static final String BURST_SIZE_PARAMETER_KEY = "qa.burst_size";
+	public static final String STEP_DURATION_PARAMETER_KEY = "qa.step_duration";
+	public static final String LATENCY_THRESHOLD_PARAMETER_KEY = "qa.adaptive_latency_threshold";
+	public static final String ERROR_THRESHOLD_PARAMETER_KEY = "qa.adaptive_error_threshold";
+	public static final String TAGGED_ANSWERS_PARAMETER_KEY = "qa.tagged_answers";
+	
+	/** KPI of the adaptive dispatch mode */
+	public static final String MAX_SUSTAINABLE_RATE_KPI = "maxSustainableQuestionsPerSecond";
+	/** KPIs of the dispatch, difference between actual and planned send time of the question sets in milliseconds */
+	public static final String MEAN_DISPATCH_JITTER_KPI = "meanDispatchJitter";
+	public static final String MAX_DISPATCH_JITTER_KPI = "maxDispatchJitter";
 	
     public static final String LARGESCALE = "largescale";
     public static final String MULTILINGUAL = "multilingual";
@@ -29,34 +52,62 @@ public class QaTaskGenerator extends AbstractTaskGenerator{
     public static final String TESTING = "testing";
     public static final String TRAINING = "training";
     
+    public static final String RAMP_DISPATCH = "ramp";
+    public static final String OPEN_LOOP_DISPATCH = "open-loop";
+    public static final String ADAPTIVE_DISPATCH = "adaptive";
+    
+    /** share of the answers of a set that is needed within the latency threshold */
+    private static final double LATENCY_PERCENTILE = 0.9;
+    
 	private String experimentTypeName;
 	private String experimentTaskName;
 	private int numberOfQuestionSets;
 	private long timeForAnswering;
+	private long timeForAnsweringNanos;
 	private long seed;
 	private String experimentDataset;
     
-    private String datasetId;
     private long timestamp;
-    private ArrayList<byte[]> taskDataList;
-    private ArrayList<byte[]> answerDataList;
+    private AtomicReferenceArray<byte[]> taskData;
+    private AtomicReferenceArray<byte[]> answerData;
     private int taskCounter;
+    private int contiguousTasks;
+    private int generatorId;
+    private int numberOfGenerators;
+    private int[] receivedTasks;
+    private CountDownLatch allTasksReceived;
+    private PayloadCodec payloadCodec;
+    private PayloadCodec answerCodec;
     private int numberOfQuestions;
+    private boolean pipelinedDispatch;
+    private boolean taggedAnswers;
+    private String dispatchMode;
+    private String arrivalProcess;
+    private double arrivalRate;
+    private int burstSize;
+    private long stepDuration;
+    private int[] setEnds;
+    private int nextSet;
+    private SetDispatcher dispatcher;
+    private boolean adaptive;
+    private long latencyThresholdNanos;
+    private double errorThreshold;
+    private AtomicLongArray sendNanos;
+    private AtomicLongArray ackNanos;
+    private AckListener ackListener;
+    private int lastSustainableSet;
     Map<String, String> env;
-    QaldBuilder qaldQuestion;
 
     /**
      * Initializes the Task Generator by getting all necessary environment parameters, which are set by the benchmark controller.
      */
     public void init() throws Exception {
     	
-    	Configurator.setRootLevel(Level.ALL); // configure logger
-    	
     	LOGGER.info("QaTaskGen: Initializing.");
     	super.init(); // call initialisation function on super class
     	
     	env = System.getenv(); //Get system environment information.
-    	//qaldQuestion = new QaldBuilder();
+    	Metrics.startServer(env);
         /*
          * load experimentTypeName from environment
          * Ex: QA
@@ -124,8 +175,11 @@ public class QaTaskGenerator extends AbstractTaskGenerator{
         //load time for answering from environment
         if(env.containsKey(TIME_FOR_ANSWERING_PARAMETER_KEY)){
         	try {
-        		timeForAnswering = Long.parseLong(env.get(TIME_FOR_ANSWERING_PARAMETER_KEY));
-                LOGGER.info("QaTaskGen: Got time for answering from the environment parameters: \""+timeForAnswering+"\"");
+        		// fractions of a millisecond are allowed for short intervals
+        		double millis = Double.parseDouble(env.get(TIME_FOR_ANSWERING_PARAMETER_KEY));
+        		timeForAnswering = (long)millis;
+        		timeForAnsweringNanos = Math.round(millis*TimeUnit.MILLISECONDS.toNanos(1));
+                LOGGER.info("QaTaskGen: Got time for answering from the environment parameters: \""+millis+"\"");
             } catch (NumberFormatException e) {
             	throw this.localErrorIllegal("QaTaskGen: Couldn't get \"" + NUMBER_OF_QUESTIONS_PARAMETER_KEY + "\" from the environment. Aborting.", e);
             }
@@ -148,10 +202,6 @@ public class QaTaskGenerator extends AbstractTaskGenerator{
         	throw this.localErrorIllegal("QaTaskGen: Couldn't get \"" + SEED_PARAMETER_KEY + "\" from the environment. Aborting.");
         }
         
-        //datasetId (hobbit_qa_1498123456789_42_largescale_training)
-        datasetId = "hobbit_qa_"+this.getHobbitSessionId()+"_"+seed+"_"+experimentTaskName.toLowerCase()+"_"+experimentDataset.toLowerCase();
-        LOGGER.info("QaTaskGen: Dataset id is "+datasetId+".");
-        
         /*
          * load sample values for task type largescale
          * If benchmark is largescale, load largescaleSampleValues
@@ -167,79 +217,475 @@ public class QaTaskGenerator extends AbstractTaskGenerator{
 			throw this.localError("QaTaskGen: Exception while getting sample data.", e);
     	}
         
+        /*
+         * load dispatch mode from environment (optional)
+         * If pipelined, every question set is sent as soon as all of its questions arrived.
+         */
+        pipelinedDispatch = false;
+        if(env.containsKey(PIPELINED_DISPATCH_PARAMETER_KEY)) {
+        	pipelinedDispatch = Boolean.parseBoolean(env.get(PIPELINED_DISPATCH_PARAMETER_KEY));
+        	LOGGER.info("QaTaskGen: Got pipelined dispatch from the environment parameters: \""+pipelinedDispatch+"\"");
+        }
+        
+        /*
+         * load answer tagging from environment (optional)
+         * The built-in evaluation module scores every question set, so it gets the set of every answer.
+         */
+        taggedAnswers = false;
+        if(env.containsKey(TAGGED_ANSWERS_PARAMETER_KEY)) {
+        	taggedAnswers = Boolean.parseBoolean(env.get(TAGGED_ANSWERS_PARAMETER_KEY));
+        	LOGGER.info("QaTaskGen: Got tagged answers from the environment parameters: \""+taggedAnswers+"\"");
+        }
+        
+        /*
+         * load answer codec from environment (optional)
+         * The built-in evaluation module decodes the answers, so they are stored with the payload codec of the data generator.
+         * The external evaluation module reads plain QALD Json.
+         */
+        answerCodec = null;
+        if(taggedAnswers && env.containsKey(QaDataGenerator.PAYLOAD_CODEC_PARAMETER_KEY)) {
+        	try {
+        		answerCodec = new PayloadCodec(env.get(QaDataGenerator.PAYLOAD_CODEC_PARAMETER_KEY));
+        		LOGGER.info("QaTaskGen: Got answer codec from the environment parameters: \""+env.get(QaDataGenerator.PAYLOAD_CODEC_PARAMETER_KEY)+"\"");
+        	} catch (IllegalArgumentException e) {
+        		throw this.localError("QaTaskGen: Payload codec must be \""+PayloadCodec.NONE+"\" or \""+PayloadCodec.DEFLATE+"\". Aborting.", e);
+        	}
+        }
+        
+        /*
+         * With several task generators every generator gets a share of the questions from the data generators,
+         * all of them send their share of every set at the same offsets, once all questions are received.
+         */
+        generatorId = this.getGeneratorId();
+        numberOfGenerators = this.getNumberOfGenerators();
+        if(numberOfGenerators>1) {
+        	LOGGER.info("QaTaskGen: Task generator "+generatorId+" of "+numberOfGenerators+".");
+        	if(pipelinedDispatch) {
+        		LOGGER.info("QaTaskGen: Pipelined dispatch is not supported with several task generators, disabling it.");
+        		pipelinedDispatch = false;
+        	}
+        }
+        
+        /*
+         * load dispatch mode from environment (optional)
+         * Ex: ramp (question sets with an interval of timeForAnswering), open-loop (arrival process)
+         * or adaptive (ramp which stops as soon as the system is saturated)
+         */
+        dispatchMode = RAMP_DISPATCH;
+        if(env.containsKey(DISPATCH_MODE_PARAMETER_KEY)) {
+        	dispatchMode = env.get(DISPATCH_MODE_PARAMETER_KEY);
+        	if(!dispatchMode.equalsIgnoreCase(RAMP_DISPATCH) && !dispatchMode.equalsIgnoreCase(OPEN_LOOP_DISPATCH)
+        			&& !dispatchMode.equalsIgnoreCase(ADAPTIVE_DISPATCH))
+        		throw this.localErrorIllegal("QaTaskGen: Dispatch mode must be \""+RAMP_DISPATCH+"\", \""+OPEN_LOOP_DISPATCH+"\" or \""+ADAPTIVE_DISPATCH+"\". Aborting.");
+        	LOGGER.info("QaTaskGen: Got dispatch mode from the environment parameters: \""+dispatchMode+"\"");
+        }
+        if(dispatchMode.equalsIgnoreCase(OPEN_LOOP_DISPATCH)) {
+        	if(!env.containsKey(ARRIVAL_PROCESS_PARAMETER_KEY) || !env.containsKey(ARRIVAL_RATE_PARAMETER_KEY))
+        		throw this.localErrorIllegal("QaTaskGen: Couldn't get \"" + ARRIVAL_PROCESS_PARAMETER_KEY + "\" and \"" + ARRIVAL_RATE_PARAMETER_KEY + "\" from the environment. Aborting.");
+        	arrivalProcess = env.get(ARRIVAL_PROCESS_PARAMETER_KEY);
+        	try {
+        		arrivalRate = Double.parseDouble(env.get(ARRIVAL_RATE_PARAMETER_KEY));
+        		burstSize = env.containsKey(BURST_SIZE_PARAMETER_KEY) ? Integer.parseInt(env.get(BURST_SIZE_PARAMETER_KEY)) : 1;
+        		stepDuration = env.containsKey(STEP_DURATION_PARAMETER_KEY) ? Long.parseLong(env.get(STEP_DURATION_PARAMETER_KEY)) : timeForAnswering;
+        	} catch (NumberFormatException e) {
+        		throw this.localErrorIllegal("QaTaskGen: Exception while trying to parse the arrival process parameters. Aborting.", e);
+        	}
+        	LOGGER.info("QaTaskGen: Open-loop arrival process \""+arrivalProcess+"\" with "+arrivalRate+" questions/s, burst size "+burstSize+", step duration "+stepDuration+" ms.");
+        }
+        
+        /*
+         * load saturation thresholds from environment (adaptive dispatch)
+         * A set is sustained if 90% of its questions are answered within the latency threshold (ms, timeForAnswering by default)
+         * and the share of unanswered questions is not above the error threshold (0.05 by default).
+         */
+        adaptive = dispatchMode.equalsIgnoreCase(ADAPTIVE_DISPATCH);
+        if(adaptive && !(experimentTaskName.equalsIgnoreCase(LARGESCALE) && experimentDataset.equalsIgnoreCase(TESTING)))
+        	throw this.localErrorIllegal("QaTaskGen: Adaptive dispatch needs growing question sets, which only the largescale testing experiment has. Aborting.");
+        if(adaptive) {
+        	latencyThresholdNanos = timeForAnsweringNanos;
+        	errorThreshold = 0.05;
+        	try {
+        		if(env.containsKey(LATENCY_THRESHOLD_PARAMETER_KEY))
+        			latencyThresholdNanos = Math.round(Double.parseDouble(env.get(LATENCY_THRESHOLD_PARAMETER_KEY))*TimeUnit.MILLISECONDS.toNanos(1));
+        		if(env.containsKey(ERROR_THRESHOLD_PARAMETER_KEY))
+        			errorThreshold = Double.parseDouble(env.get(ERROR_THRESHOLD_PARAMETER_KEY));
+        	} catch (NumberFormatException e) {
+        		throw this.localErrorIllegal("QaTaskGen: Exception while trying to parse the saturation thresholds. Aborting.", e);
+        	}
+        	LOGGER.info("QaTaskGen: Adaptive dispatch with latency threshold "+TimeUnit.NANOSECONDS.toMillis(latencyThresholdNanos)+" ms and error threshold "+errorThreshold+".");
+        }
+        
+        /*
+         * set up question sets
+         * open-loop: every question is its own set, sent at its planned arrival time.
+         * largescale testing: set x contains x questions, otherwise every set contains one question.
+         */
+        if(dispatchMode.equalsIgnoreCase(OPEN_LOOP_DISPATCH)) {
+        	setEnds = new int[numberOfQuestions];
+        	for(int x=0;x<numberOfQuestions;x++)
+        		setEnds[x] = x+1;
+        }else {
+        	setEnds = new int[numberOfQuestionSets];
+        	for(int x=0, end=0;x<numberOfQuestionSets;x++) {
+        		if(experimentDataset.equalsIgnoreCase(TESTING) && experimentTaskName.equalsIgnoreCase(LARGESCALE))
+        			end += x+1;
+        		else
+        			end++;
+        		setEnds[x] = end;
+        	}
+        }
+        
         taskCounter = 0;
-        taskDataList = new ArrayList<byte[]>();
-        answerDataList = new ArrayList<byte[]>();
+        contiguousTasks = 0;
+        nextSet = 0;
+        // filled by generateTask at the global index of the question, read by the dispatcher thread
+        taskData = new AtomicReferenceArray<byte[]>(numberOfQuestions);
+        answerData = new AtomicReferenceArray<byte[]>(numberOfQuestions);
+        receivedTasks = new int[numberOfGenerators];
+        allTasksReceived = new CountDownLatch(1);
+        // every message names its codec, the data generator chooses it
+        payloadCodec = new PayloadCodec(PayloadCodec.NONE);
+        if(dispatchMode.equalsIgnoreCase(OPEN_LOOP_DISPATCH)) {
+        	try {
+        		final long[] arrivals = ArrivalProcess.plan(arrivalProcess, numberOfQuestions, arrivalRate, burstSize,
+        				TimeUnit.MILLISECONDS.toNanos(stepDuration), seed);
+        		// after the last arrival the system gets timeForAnswering to answer
+        		long tail = (arrivals.length==0 ? 0 : arrivals[arrivals.length-1])+timeForAnsweringNanos;
+        		dispatcher = new SetDispatcher(arrivals.length, x -> arrivals[x], tail, this::sendSet);
+        	} catch (IllegalArgumentException e) {
+        		throw this.localErrorIllegal("QaTaskGen: Invalid arrival process. Aborting.", e);
+        	}
+        }else {
+        	dispatcher = SetDispatcher.withInterval(setEnds.length, timeForAnsweringNanos, this::sendSet);
+        }
+        
+        /*
+         * the evaluation storage acknowledges every response, which gives the response latency of every task
+         * and tells the adaptive ramp how the system keeps up
+         */
+        lastSustainableSet = -1;
+        sendNanos = new AtomicLongArray(numberOfQuestions);
+        ackNanos = new AtomicLongArray(numberOfQuestions);
+        // received but not yet sent
+        Metrics.gauge("tasks_backlog", () -> taskCounter-Metrics.counter("tasks_sent").get());
+        ackListener = new AckListener(cmdChannel.getConnection().createChannel(),
+        		this.generateSessionQueueName(Constants.HOBBIT_ACK_EXCHANGE_NAME), this::acknowledged);
         
         LOGGER.info("QaTaskGen: Initialized.");
     }
 
     /**
-     * Splits the received byte-Array into needed (meta-)informations and put them into the QALD-JSON-FORMAT as a String
-     * depending on chosen task.
-     * If all data is obtained, tasks will be sent to the system and evaluation storage with an interval of <code>timeForAnswering</code>.
+     * Splits the received batch of the data generator into its questions.
      */
     protected void generateTask(byte[] data) throws Exception {
-    	//String taskId = getNextTaskId();
-    	qaldQuestion = new QaldBuilder(RabbitMQUtils.readString(data));
-    	qaldQuestion.setDatasetID(this.datasetId);
-    	answerDataList.add(RabbitMQUtils.writeString(qaldQuestion.getQuestionAsQald().toString()));
-    	//LOGGER.info("With answers:\n"+qaldQuestion.getQaldQuestion());
-    	qaldQuestion.removeAnswers();
-    	qaldQuestion.removeQuery();
-    	//LOGGER.info("Without answers:\n"+qaldQuestion.getQaldQuestion());
-		taskDataList.add(RabbitMQUtils.writeString(qaldQuestion.getQuestionAsQald().toString()));
-        // send data if numberOfQuestions reached
+    	for(TaskPayload payload:TaskPayload.decodeMessage(payloadCodec, data))
+    		addTask(payload);
+    	if(numberOfGenerators>1)
+    		sendToCmdQueue(QaCommands.TASKS_RECEIVED, QaCommands.tasksReceived(generatorId, taskCounter));
+    }
+
+    /**
+     * Splits a question into the task for the system and the answer for the evaluation storage,
+     * both are serialized by the data generator already.
+     * If all data is obtained, tasks will be sent to the system and evaluation storage with an interval of <code>timeForAnswering</code>,
+     * measured from the start of the first set.
+     * In pipelined mode every question set is sent as soon as all of its questions are obtained.
+     * With several task generators the questions are sent by {@link #dispatchShare()}.
+     */
+    private void addTask(TaskPayload payload) throws Exception {
+    	int index = payload.getIndex();
+    	if(index<0 || index>=numberOfQuestions)
+    		throw this.localError("QaTaskGen: Got question "+index+", but there are only "+numberOfQuestions+" questions.");
+    	// encoded before the run, so sending the answer costs nothing extra
+    	answerData.set(index, answerCodec!=null ? answerCodec.encode(payload.getAnswer()) : payload.getAnswer());
+    	taskData.set(index, payload.getTask());
         taskCounter++;
+        Metrics.counter("tasks_received").increment();
+        // questions of several data generators arrive interleaved
+        while(contiguousTasks<numberOfQuestions && taskData.get(contiguousTasks)!=null)
+        	contiguousTasks++;
+        if(numberOfGenerators>1)
+        	return;
+        if(pipelinedDispatch) {
+        	// release every set which is complete now, the clock starts with the first one
+        	while(nextSet<setEnds.length && contiguousTasks>=setEnds[nextSet]) {
+        		dispatcher.markReady(nextSet);
+        		if(!dispatcher.isStarted())
+        			dispatcher.start();
+        		nextSet++;
+        	}
+        	if(taskCounter==numberOfQuestions) {
+        		dispatcher.awaitCompletion();
+        		reportResults();
+        		LOGGER.info("QaTaskGen: Sending Task Data and Answer Data finished.");
+        	}
+        	return;
+        }
+        // send data if numberOfQuestions reached
         if(taskCounter == numberOfQuestions){
         	LOGGER.info("QaTaskGen: Num of tasks recieved equal num of Qs = "+taskCounter);
-        	if(taskDataList.size() == answerDataList.size()){
-        		LOGGER.info("QaTaskGen: Sending Task Data.");
-        		if(experimentDataset.equalsIgnoreCase(TESTING) && experimentTaskName.equalsIgnoreCase(LARGESCALE)) {
-        			int i=0;
-            		for(int x=1;x<=this.numberOfQuestionSets;x++) {
-                		for(int j=0;j<x;j++) {
-                			sendData(i);
-                			//LOGGER.info("QaTaskGen:Task "+i+" has been sent!");
-                			i++;
-                		}
-            	    	TimeUnit.MILLISECONDS.sleep(timeForAnswering);
-                	}
-                }else {
-            		for(int i = 0; i<numberOfQuestions; i++){
-	                	sendData(i);
-	                	//LOGGER.info("QaTaskGen: "+i+" has been sent!");
-	                	TimeUnit.MILLISECONDS.sleep(timeForAnswering);
-                	}
-                }
-	            LOGGER.info("QaTaskGen: "+numberOfQuestions+" sets of Task Data have being sent.");
-	            LOGGER.info("QaTaskGen: Sending Task Data and Answer Data finished.");
-        	}else{
-        		throw this.localError("QaTaskGen: Generated amount of Answer Data does not fit to amount of Task Data.");
-        	}
+        	LOGGER.info("QaTaskGen: Sending Task Data.");
+        	for(int x=0;x<setEnds.length;x++)
+        		dispatcher.markReady(x);
+        	dispatcher.start();
+        	dispatcher.awaitCompletion();
+        	reportResults();
+        	LOGGER.info("QaTaskGen: "+numberOfQuestions+" sets of Task Data have being sent.");
+        	LOGGER.info("QaTaskGen: Sending Task Data and Answer Data finished.");
         }
     }
 
+    /**
+     * Collects the numbers of received questions of all task generators.
+     * With several task generators, the end of the data generation is handled once this generator sent its share,
+     * since the generator terminates as soon as the super class gets that command.
+     */
+    @Override
+    public void receiveCommand(byte command, byte[] data) {
+    	if(command==QaCommands.TASKS_RECEIVED) {
+    		recordReceivedTasks(QaCommands.tasksReceivedGenerator(data), QaCommands.tasksReceivedCount(data));
+    	}else if(command==Commands.DATA_GENERATION_FINISHED && numberOfGenerators>1) {
+    		Thread thread = new Thread(() -> {
+    			dispatchShare();
+    			super.receiveCommand(command, data);
+    		}, "qa-share-dispatch");
+    		thread.start();
+    	}else {
+    		super.receiveCommand(command, data);
+    	}
+    }
+
+    private synchronized void recordReceivedTasks(int generator, int count) {
+    	if(receivedTasks==null || generator<0 || generator>=receivedTasks.length)
+    		return;
+    	receivedTasks[generator] = Math.max(receivedTasks[generator], count);
+    	int sum = 0;
+    	for(int received:receivedTasks)
+    		sum += received;
+    	if(sum==numberOfQuestions)
+    		allTasksReceived.countDown();
+    }
+
+    /**
+     * Sends the share of this task generator, once all task generators received their questions.
+     * All generators get the last count at about the same time, so their dispatchers start together.
+     */
+    private void dispatchShare() {
+    	try {
+    		allTasksReceived.await();
+    		LOGGER.info("QaTaskGen: All task generators received their questions, sending "+taskCounter+" of "+numberOfQuestions+".");
+    		for(int x=0;x<setEnds.length;x++)
+    			dispatcher.markReady(x);
+    		dispatcher.start();
+    		dispatcher.awaitCompletion();
+    		reportResults();
+    		LOGGER.info("QaTaskGen: Sending Task Data and Answer Data finished.");
+    	}catch(Exception e) {
+    		LOGGER.error("QaTaskGen: Couldn't send the questions of this task generator.", e);
+    	}
+    }
+
+    /**
+     * A function to send a question set, called by the dispatcher at the planned time of the set.
+     * In adaptive mode the previous set is checked first, the ramp stops if the system couldn't sustain it.
+     * @param set = index of the question set
+     * @throws Exception
+     */
+    private void sendSet(int set) throws Exception {
+    	if(adaptive && set>0 && !isSustained(set-1)) {
+    		LOGGER.info("QaTaskGen: System is saturated at set {}, stopping the ramp.", set-1);
+    		dispatcher.stop();
+    		return;
+    	}
+    	int start = set==0 ? 0 : setEnds[set-1];
+    	int[] sent = new int[setEnds[set]-start];
+    	int count = 0;
+    	for(int i=start;i<setEnds[set];i++) {
+    		// other task generators send the questions they hold
+    		if(taskData.get(i)!=null) {
+    			sendData(set, i);
+    			sent[count++] = i;
+    		}
+    	}
+    	// the benchmark controller waits for the answers of the sent tasks
+    	if(count>0)
+    		sendToCmdQueue(QaCommands.TASKS_SENT, QaCommands.tasksSent(sent, count));
+    }
+
     /**
      * A function to send data to the system under testing and evaluation model
+     * @param set = index of the question set
      * @param id = Task ID
      * @throws Exception
      */
-    private void sendData(int id) throws Exception {
+    private void sendData(int set, int id) throws Exception {
     	try {
 	    	String internal_taskId = String.valueOf(id);
 			timestamp = System.currentTimeMillis();
-	    	sendTaskToSystemAdapter(internal_taskId, taskDataList.get(id));
-	    	sendTaskToEvalStorage(internal_taskId, timestamp, answerDataList.get(id));
+			sendNanos.set(id, System.nanoTime());
+	    	sendTaskToSystemAdapter(internal_taskId, taskData.get(id));
+	    	if(taggedAnswers) {
+	    		// open-loop sets are single arrivals, they are only scored in aggregate
+	    		int tag = dispatchMode.equalsIgnoreCase(OPEN_LOOP_DISPATCH) ? -1 : set;
+	    		sendTaskToEvalStorage(internal_taskId, timestamp, QaEvaluationModule.tagAnswer(tag, id, answerData.get(id)));
+	    	}else {
+	    		sendTaskToEvalStorage(internal_taskId, timestamp, answerData.get(id));
+	    	}
+	    	Metrics.counter("tasks_sent").increment();
     	}catch(Exception e) {
     		throw this.localError("QaTaskGen: Can't send data!", e);
     	}
 	}
+
+    /**
+     * Records the first acknowledgement of a task.
+     * @param taskId = Task ID
+     * @param receivedNanos = time the acknowledgement was received
+     */
+    private void acknowledged(String taskId, long receivedNanos) {
+    	try {
+    		int id = Integer.parseInt(taskId);
+    		if(id>=0 && id<numberOfQuestions && sendNanos.get(id)!=0 && ackNanos.compareAndSet(id, 0, receivedNanos)) {
+    			Metrics.counter("tasks_acknowledged").increment();
+    			Metrics.timer("task_latency").record(receivedNanos-sendNanos.get(id));
+    		}
+    	}catch(NumberFormatException e) {
+    		LOGGER.warn("QaTaskGen: Got acknowledgement for unknown task {}.", taskId);
+    	}
+    }
+
+    /**
+     * Checks whether the system sustained a question set, i.e. answered enough of its questions within the thresholds.
+     * Called one interval after the set was sent.
+     * @param set = index of the question set
+     * @return true if the set is sustained
+     */
+    private boolean isSustained(int set) {
+    	int start = set==0 ? 0 : setEnds[set-1];
+    	int size = setEnds[set]-start;
+    	long[] latencies = new long[size];
+    	int answered = 0;
+    	for(int i=start;i<setEnds[set];i++) {
+    		long ack = ackNanos.get(i);
+    		if(ack!=0)
+    			latencies[answered++] = ack-sendNanos.get(i);
+    	}
+    	double unanswered = 1-answered/(double)size;
+    	long latency = Long.MAX_VALUE;
+    	if(answered>0) {
+    		Arrays.sort(latencies, 0, answered);
+    		latency = latencies[(int)Math.ceil(LATENCY_PERCENTILE*answered)-1];
+    	}
+    	boolean sustained = answered>0 && latency<=latencyThresholdNanos && unanswered<=errorThreshold;
+    	if(LOGGER.isInfoEnabled())
+    		LOGGER.info("QaTaskGen: Set {}: {}/{} answered{}{}", set, answered, size,
+    				answered>0 ? ", p90 latency "+TimeUnit.NANOSECONDS.toMillis(latency)+" ms" : "",
+    				sustained ? ", sustained." : ", not sustained.");
+    	if(sustained)
+    		lastSustainableSet = set;
+    	return sustained;
+    }
+
+    /**
+     * Sends the measured results to the benchmark controller, after the tail of the dispatch passed.
+     * @throws IOException
+     */
+    private void reportResults() throws IOException {
+    	reportLatencies();
+    	reportDispatchJitter();
+    	if(adaptive)
+    		reportMaxSustainableRate();
+    }
+
+    /**
+     * Sends the latency histograms of the questions this task generator sent to the benchmark controller,
+     * per question set and for all questions. Open-loop sets hold a single question, so only the total is sent.
+     * The latency of a task is the time from sending it until the acknowledgement of its response.
+     * @throws IOException
+     */
+    private void reportLatencies() throws IOException {
+    	boolean perSet = !dispatchMode.equalsIgnoreCase(OPEN_LOOP_DISPATCH);
+    	LatencyHistogram total = new LatencyHistogram();
+    	int totalUnanswered = 0;
+    	for(int set=0;set<setEnds.length;set++) {
+    		LatencyHistogram histogram = new LatencyHistogram();
+    		int unanswered = 0;
+    		int sent = 0;
+    		for(int i=set==0 ? 0 : setEnds[set-1];i<setEnds[set];i++) {
+    			long send = sendNanos.get(i);
+    			if(send==0)
+    				continue;
+    			sent++;
+    			long ack = ackNanos.get(i);
+    			if(ack!=0)
+    				histogram.record(ack-send);
+    			else
+    				unanswered++;
+    		}
+    		if(sent==0)
+    			continue;
+    		total.merge(histogram);
+    		totalUnanswered += unanswered;
+    		if(perSet) {
+    			LOGGER.info("QaTaskGen: Set "+set+" latency p50 "+toMillis(histogram.getValueAtPercentile(50))
+    					+" ms, p90 "+toMillis(histogram.getValueAtPercentile(90))+" ms, p99 "+toMillis(histogram.getValueAtPercentile(99))
+    					+" ms, max "+toMillis(histogram.getMax())+" ms, "+unanswered+" unanswered.");
+    			sendToCmdQueue(QaCommands.LATENCY, QaCommands.latency(set, unanswered, histogram));
+    		}
+    	}
+    	LOGGER.info("QaTaskGen: Latency p50 "+toMillis(total.getValueAtPercentile(50))
+    			+" ms, p90 "+toMillis(total.getValueAtPercentile(90))+" ms, p99 "+toMillis(total.getValueAtPercentile(99))
+    			+" ms, max "+toMillis(total.getMax())+" ms, "+totalUnanswered+" unanswered.");
+    	sendToCmdQueue(QaCommands.LATENCY, QaCommands.latency(-1, totalUnanswered, total));
+    }
+
+    private static double toMillis(long nanos) {
+    	return nanos/(double)TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Sends the mean and maximum jitter of the sent question sets to the benchmark controller,
+     * so a late dispatch shows up in the results next to the latencies it distorts.
+     * @throws IOException
+     */
+    private void reportDispatchJitter() throws IOException {
+    	// the controller weights the mean with the number of sets to combine the task generators
+    	sendToCmdQueue(QaCommands.DISPATCH_JITTER, QaCommands.dispatchJitter(dispatcher.getSentSets(), dispatcher.getMeanJitter(), dispatcher.getMaxJitter()));
+    }
+
+    /**
+     * Sends the maximum sustainable questions per second to the benchmark controller,
+     * i.e. the size of the largest sustained set per interval.
+     * @throws IOException
+     */
+    private void reportMaxSustainableRate() throws IOException {
+    	int sent = dispatcher.getSentSets();
+    	// the last set is checked after the tail, if the ramp wasn't stopped
+    	if(sent==setEnds.length && sent>0)
+    		isSustained(sent-1);
+    	double rate = 0;
+    	if(lastSustainableSet>=0) {
+    		int size = setEnds[lastSustainableSet]-(lastSustainableSet==0 ? 0 : setEnds[lastSustainableSet-1]);
+    		rate = size/(timeForAnsweringNanos/(double)TimeUnit.SECONDS.toNanos(1));
+    	}
+    	LOGGER.info("QaTaskGen: Maximum sustainable rate is "+rate+" questions/s (set "+lastSustainableSet+").");
+    	sendToCmdQueue(QaCommands.KPI, QaCommands.kpi(MAX_SUSTAINABLE_RATE_KPI, rate));
+    }
+
 	/**
      * Calls super.close() Method and logs Closing-Information.
      */
     public void close() throws IOException {
     	LOGGER.info("QaTaskGen: Closing.");
+    	Metrics.close("QaTaskGen");
+    	if(payloadCodec!=null)
+    		LOGGER.info("QaTaskGen: Payload decoding: "+payloadCodec.getStats()+".");
+    	if(answerCodec!=null)
+    		LOGGER.info("QaTaskGen: Answer encoding: "+answerCodec.getStats()+".");
+    	if(dispatcher!=null)
+    		dispatcher.shutdown();
+    	if(ackListener!=null)
+    		ackListener.close();
         super.close();
         LOGGER.info("QaTaskGen: Closed.");
     }
@@ -0,0 +1,62 @@
+package org.hobbit.questionanswering.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+import org.hobbit.core.rabbit.RabbitMQUtils;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+
+/**
+ * Listens to the acknowledgements the evaluation storage publishes for every stored system response.
+ * The evaluation storage sends them only if it is created with the acknowledgement flag.
+ */
+public class AckListener implements Closeable {
+
+	/**
+	 * Gets the id of an answered task.
+	 */
+	public interface AckHandler {
+		/**
+		 * @param taskId : id of the answered task
+		 * @param receivedNanos : {@link System#nanoTime()} when the acknowledgement was received
+		 */
+		void acknowledged(String taskId,long receivedNanos);
+	}
+
+	private Channel channel;
+
+	/**
+	 * The class constructor
+	 * @param channel : a channel used only by this listener
+	 * @param exchangeName : the session specific acknowledgement exchange
+	 * @param handler : gets every acknowledgement
+	 * @throws IOException
+	 */
+	public AckListener(Channel channel,String exchangeName,final AckHandler handler) throws IOException {
+		this.channel = channel;
+		channel.exchangeDeclare(exchangeName, "fanout", false, true, null);
+		String queueName = channel.queueDeclare().getQueue();
+		channel.queueBind(queueName, exchangeName, "");
+		channel.basicConsume(queueName, true, new DefaultConsumer(channel) {
+			@Override
+			public void handleDelivery(String consumerTag,Envelope envelope,AMQP.BasicProperties properties,byte[] body) throws IOException {
+				handler.acknowledged(RabbitMQUtils.readString(body), System.nanoTime());
+			}
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if(this.channel.isOpen())
+				this.channel.close();
+		}catch(TimeoutException e) {
+			throw new IOException(e);
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package org.hobbit.questionanswering.helper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.atlas.json.JsonValue;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A persistent cache of resolved gold answers.
+ * Entries are keyed by a hash of the SPARQL service url and the normalized query text,
+ * and stored in a gzip compressed binary file.
+ */
+public class AnswerCache {
+	private static final Logger LOGGER = LogManager.getLogger(AnswerCache.class);
+
+	private static final int MAGIC = 0x51414143; // "QAAC"
+	private static final int VERSION = 1;
+
+	private String fileName;
+	private long ttl;
+	private Map<String, Entry> entries;
+	private AtomicLong hits;
+	private AtomicLong misses;
+	private volatile boolean modified;
+
+	/**
+	 * The class constructor
+	 * @param fileName : the cache file
+	 * @param ttl : time in milliseconds an entry stays valid, 0 or less to keep entries forever
+	 */
+	public AnswerCache(String fileName,long ttl) {
+		this.fileName = fileName;
+		this.ttl = ttl;
+		this.entries = new ConcurrentHashMap<String, Entry>();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	/**
+	 * To load the cache file, a missing or outdated file leaves the cache empty.
+	 */
+	public void load() {
+		File file = new File(this.fileName);
+		if(!file.exists()) {
+			LOGGER.info("AnswerCache: No cache file at "+this.fileName+", starting empty.");
+			return;
+		}
+		long now = System.currentTimeMillis();
+		int expired = 0;
+		try(DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+			if(in.readInt()!=MAGIC || in.readInt()!=VERSION) {
+				LOGGER.info("AnswerCache: Cache file "+this.fileName+" has an old format, ignoring it.");
+				return;
+			}
+			int size = in.readInt();
+			for(int i=0;i<size;i++) {
+				String key = in.readUTF();
+				long storedAt = in.readLong();
+				boolean hasAnswers = in.readBoolean();
+				byte[] answers = new byte[in.readInt()];
+				in.readFully(answers);
+				if(this.isExpired(storedAt, now)) {
+					expired++;
+					this.modified = true;
+				}else
+					this.entries.put(key, new Entry(storedAt, hasAnswers, new String(answers, StandardCharsets.UTF_8)));
+			}
+		}catch(IOException e) {
+			LOGGER.error("AnswerCache: Couldn't read cache file "+this.fileName+", starting empty.", e);
+			this.entries.clear();
+			return;
+		}
+		LOGGER.info("AnswerCache: Loaded "+this.entries.size()+" entries, dropped "+expired+" expired entries.");
+	}
+
+	/**
+	 * To write the cache file if entries were added or dropped since loading.
+	 */
+	public void save() {
+		if(!this.modified)
+			return;
+		File file = new File(this.fileName);
+		File tmp = new File(this.fileName+".tmp");
+		try {
+			if(file.getAbsoluteFile().getParentFile()!=null)
+				file.getAbsoluteFile().getParentFile().mkdirs();
+			try(DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(this.entries.size());
+				for(Map.Entry<String, Entry> entry:this.entries.entrySet()) {
+					byte[] answers = entry.getValue().answers.getBytes(StandardCharsets.UTF_8);
+					out.writeUTF(entry.getKey());
+					out.writeLong(entry.getValue().storedAt);
+					out.writeBoolean(entry.getValue().hasAnswers);
+					out.writeInt(answers.length);
+					out.write(answers);
+				}
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			this.modified = false;
+			LOGGER.info("AnswerCache: Saved "+this.entries.size()+" entries to "+this.fileName+".");
+		}catch(IOException e) {
+			LOGGER.error("AnswerCache: Couldn't write cache file "+this.fileName+".", e);
+		}
+	}
+
+	/**
+	 * To look up the answers of a query.
+	 * @param sparqlService : a url for sparql service
+	 * @param query : the SPARQL query
+	 * @return the cached entry or null if the query is not cached
+	 */
+	public Entry get(String sparqlService,String query) {
+		Entry entry = this.entries.get(key(sparqlService, query));
+		if(entry==null || this.isExpired(entry.storedAt, System.currentTimeMillis())) {
+			this.misses.incrementAndGet();
+			return null;
+		}
+		this.hits.incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * To store the answers of a query.
+	 * @param sparqlService : a url for sparql service
+	 * @param query : the SPARQL query
+	 * @param answers : the Qald answers, or null if the query has no answers
+	 */
+	public void put(String sparqlService,String query,JsonValue answers) {
+		this.entries.put(key(sparqlService, query), new Entry(System.currentTimeMillis(), answers!=null, answers==null ? "" : answers.toString()));
+		this.modified = true;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	private boolean isExpired(long storedAt,long now) {
+		return this.ttl>0 && now-storedAt>this.ttl;
+	}
+
+	/**
+	 * To get the question object of a Qald formated question, which carries the answers.
+	 * @param qald : Qald formated question
+	 * @return the question object
+	 */
+	public static JsonObject questionOf(JsonValue qald) {
+		JsonObject object = qald.getAsObject();
+		if(object.hasKey("questions"))
+			return object.get("questions").getAsArray().get(0).getAsObject();
+		return object;
+	}
+
+	/*
+	 * Hash of the service url and the query text with collapsed white spaces.
+	 */
+	private static String key(String sparqlService,String query) {
+		String normalized = sparqlService.trim()+"\n"+query.trim().replaceAll("\\s+", " ");
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(normalized.getBytes(StandardCharsets.UTF_8));
+			StringBuilder builder = new StringBuilder();
+			for(byte b:digest)
+				builder.append(String.format("%02x", b));
+			return builder.toString();
+		}catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * A cached answer set.
+	 */
+	public static class Entry {
+		private long storedAt;
+		private boolean hasAnswers;
+		private String answers;
+
+		private Entry(long storedAt,boolean hasAnswers,String answers) {
+			this.storedAt = storedAt;
+			this.hasAnswers = hasAnswers;
+			this.answers = answers;
+		}
+
+		/**
+		 * @return true if the query returned at least one answer
+		 */
+		public boolean hasAnswers() {
+			return hasAnswers;
+		}
+
+		/**
+		 * @return a fresh copy of the Qald answers
+		 */
+		public JsonValue getAnswers() {
+			return JSON.parseAny(answers);
+		}
+	}
+}
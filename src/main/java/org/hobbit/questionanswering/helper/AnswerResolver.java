@@ -0,0 +1,279 @@
+package org.hobbit.questionanswering.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.atlas.json.JsonValue;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.ResultSetFormatter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hobbit.QaldBuilder;
+
+/**
+ * Resolves the gold answers of prepared questions against a SPARQL service.
+ * Queries run on a fixed worker pool with a cap on in-flight queries,
+ * and the results are collected back in the order of the given questions.
+ */
+public class AnswerResolver {
+	private static final Logger LOGGER = LogManager.getLogger(AnswerResolver.class);
+
+	public static final int DEFAULT_WORKERS = 1;
+	public static final long DEFAULT_QUERY_TIMEOUT = 60000;
+
+	private String sparqlService;
+	private String queryService;
+	private boolean cacheOnly;
+	private int workers;
+	private int maxInFlight;
+	private long queryTimeout;
+	private AnswerCache cache;
+	//queries which failed or timed out, as opposed to questions without answers
+	private AtomicInteger failures = new AtomicInteger();
+
+	/**
+	 * The class constructor
+	 * @param sparqlService : a url for sparql service
+	 * @param workers : number of worker threads, 1 resolves questions one by one
+	 * @param maxInFlight : maximum number of submitted but not yet collected queries
+	 * @param queryTimeout : time in milliseconds to wait for a single query
+	 */
+	public AnswerResolver(String sparqlService,int workers,int maxInFlight,long queryTimeout) {
+		this.sparqlService = sparqlService;
+		this.queryService = sparqlService;
+		this.workers = Math.max(1, workers);
+		this.maxInFlight = Math.max(this.workers, maxInFlight);
+		this.queryTimeout = queryTimeout>0 ? queryTimeout : DEFAULT_QUERY_TIMEOUT;
+	}
+
+	/**
+	 * To look up answers in a cache before querying the SPARQL service.
+	 * @param cache : the answer cache, null to always query the service
+	 */
+	public void setCache(AnswerCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * To send the queries to a stand-in of the SPARQL service, e.g. an embedded endpoint.
+	 * Answers are still looked up in the cache under the url of the SPARQL service,
+	 * but answers of the stand-in aren't cached, they may differ from those of the service.
+	 * @param queryService : url the queries are sent to
+	 */
+	public void setQueryService(String queryService) {
+		this.queryService = queryService;
+	}
+
+	/**
+	 * @param cacheOnly : true to take answers only from the cache, questions missing in the cache have no answers
+	 */
+	public void setCacheOnly(boolean cacheOnly) {
+		this.cacheOnly = cacheOnly;
+	}
+
+	/**
+	 * To resolve the answers of the given questions.
+	 * @param questions : prepared questions without answers
+	 * @return Qald formated questions which have at least one answer, in the order of the input
+	 * @throws InterruptedException
+	 */
+	public List<JsonValue> resolve(List<QaldBuilder> questions) throws InterruptedException {
+		return this.resolve(questions, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * To resolve the answers of the given questions until enough questions have answers.
+	 * The result is the first {@code limit} questions with answers in the order of the input,
+	 * independent of the number of workers.
+	 * @param questions : prepared questions without answers
+	 * @param limit : number of questions with answers to find
+	 * @return Qald formated questions which have at least one answer, in the order of the input
+	 * @throws InterruptedException
+	 */
+	public List<JsonValue> resolve(List<QaldBuilder> questions,int limit) throws InterruptedException {
+		return this.resolve(questions, limit, false);
+	}
+
+	/**
+	 * To resolve the answers of all given questions, e.g. to prepare a {@link DatasetSnapshot}.
+	 * Unlike {@link #resolve(List)} a failed query isn't taken as a question without answers.
+	 * @param questions : prepared questions without answers
+	 * @return for every question the Qald formated question with answers, or null if it has none, in the order of the input
+	 * @throws IOException if a query failed or timed out
+	 * @throws InterruptedException
+	 */
+	public List<JsonValue> resolveEach(List<QaldBuilder> questions) throws IOException, InterruptedException {
+		int before = this.failures.get();
+		List<JsonValue> resolved = this.resolve(questions, Integer.MAX_VALUE, true);
+		int failed = this.failures.get()-before;
+		if(failed>0)
+			throw new IOException(failed+" of "+questions.size()+" queries failed or timed out.");
+		return resolved;
+	}
+
+	/*
+	 * Resolves questions until limit of them have answers, the result keeps questions without answers as null if asked to.
+	 */
+	private List<JsonValue> resolve(List<QaldBuilder> questions,int limit,boolean keepUnanswered) throws InterruptedException {
+		List<JsonValue> resolved = new ArrayList<JsonValue>();
+		int answered = 0;
+		int queried = 0;
+		// a single worker takes the same path, the query execution itself times out as well,
+		// so a hanging query doesn't keep the worker from the following questions
+		ExecutorService executor = Executors.newFixedThreadPool(this.workers, new ResolverThreadFactory());
+		Deque<Future<JsonValue>> inFlight = new ArrayDeque<Future<JsonValue>>();
+		Deque<QaldBuilder> inFlightQuestions = new ArrayDeque<QaldBuilder>();
+		try {
+			for(final QaldBuilder question:questions) {
+				// collect the oldest query first to keep the original order
+				if(inFlight.size()>=this.maxInFlight && this.collect(inFlight.poll(), inFlightQuestions.poll(), resolved, keepUnanswered))
+					answered++;
+				if(answered>=limit)
+					break;
+				inFlight.add(executor.submit(() -> this.resolveOne(question)));
+				inFlightQuestions.add(question);
+				queried++;
+			}
+			while(!inFlight.isEmpty() && answered<limit) {
+				if(this.collect(inFlight.poll(), inFlightQuestions.poll(), resolved, keepUnanswered))
+					answered++;
+			}
+			// queries started ahead of time which are not needed anymore
+			for(Future<JsonValue> future:inFlight)
+				future.cancel(true);
+		}finally {
+			executor.shutdownNow();
+		}
+		LOGGER.info("AnswerResolver: {} of {} queried questions have answers.", answered, queried);
+		return resolved;
+	}
+
+	/*
+	 * Waits for a submitted query and adds its question to the result if it has answers,
+	 * returns true if it has answers.
+	 */
+	private boolean collect(Future<JsonValue> future,QaldBuilder question,List<JsonValue> resolved,boolean keepUnanswered) throws InterruptedException {
+		JsonValue value = null;
+		try {
+			value = future.get(this.queryTimeout, TimeUnit.MILLISECONDS);
+		}catch(TimeoutException e) {
+			future.cancel(true);
+			this.failures.incrementAndGet();
+			Metrics.counter("sparql_failures").increment();
+			LOGGER.error("AnswerResolver: Query timed out after {} ms, ID={}", this.queryTimeout, question.getID());
+		}catch(ExecutionException e) {
+			this.failures.incrementAndGet();
+			Metrics.counter("sparql_failures").increment();
+			LOGGER.error("AnswerResolver: ID={}: {}", question.getID(), e.getCause().getMessage());
+		}
+		if(value!=null || keepUnanswered)
+			resolved.add(value);
+		return value!=null;
+	}
+
+	/*
+	 * Resolves a single question, returns null if it has no answers or the query failed.
+	 */
+	private JsonValue resolveOne(QaldBuilder question) {
+		try {
+			if(this.cache!=null)
+				return this.resolveCached(question);
+			if(this.cacheOnly)
+				return null;
+			return this.queryAnswers(question);
+		}catch(Exception e) {
+			this.failures.incrementAndGet();
+			Metrics.counter("sparql_failures").increment();
+			LOGGER.error("AnswerResolver: ID={}: {}", question.getID(), e.getMessage());
+			// the full query only on demand, it is long and failures come in bursts
+			if(LOGGER.isDebugEnabled())
+				LOGGER.debug("AnswerResolver: Query=\n{}", question.getQuery());
+		}
+		return null;
+	}
+
+	/*
+	 * Sends the query of a question to the SPARQL service over the pooled client,
+	 * returns the Qald formated question with the result as answers, or null if it has no answers.
+	 */
+	private JsonValue queryAnswers(QaldBuilder question) {
+		long start = System.nanoTime();
+		Query query = QueryFactory.create(question.getQuery());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try(QueryExecution execution = SparqlHttpClient.query(this.queryService, query)) {
+			execution.setTimeout(this.queryTimeout);
+			if(query.isAskType()) {
+				ResultSetFormatter.outputAsJSON(out, execution.execAsk());
+			}else {
+				ResultSet results = execution.execSelect();
+				if(!results.hasNext())
+					return null;
+				ResultSetFormatter.outputAsJSON(out, results);
+			}
+		}finally {
+			Metrics.timer("sparql_resolution").recordSince(start);
+		}
+		JsonArray answers = new JsonArray();
+		answers.add(JSON.parseAny(new String(out.toByteArray(), StandardCharsets.UTF_8)));
+		JsonValue value = question.getQuestionAsQald();
+		AnswerCache.questionOf(value).put("answers", answers);
+		return value;
+	}
+
+	/*
+	 * Takes the answers from the cache, or resolves them and caches those of the SPARQL service.
+	 */
+	private JsonValue resolveCached(QaldBuilder question) {
+		AnswerCache.Entry entry = this.cache.get(this.sparqlService, question.getQuery());
+		if(entry!=null) {
+			if(!entry.hasAnswers())
+				return null;
+			JsonValue value = question.getQuestionAsQald();
+			AnswerCache.questionOf(value).put("answers", entry.getAnswers());
+			return value;
+		}
+		if(this.cacheOnly)
+			return null;
+		JsonValue value = this.queryAnswers(question);
+		if(!this.queryService.equals(this.sparqlService))
+			return value;
+		if(value==null) {
+			this.cache.put(this.sparqlService, question.getQuery(), null);
+			return null;
+		}
+		this.cache.put(this.sparqlService, question.getQuery(), AnswerCache.questionOf(value).get("answers"));
+		return value;
+	}
+
+	/*
+	 * Creates daemon threads, so a hanging query does not keep the container alive.
+	 */
+	private static class ResolverThreadFactory implements ThreadFactory {
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "qa-answer-resolver-"+counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
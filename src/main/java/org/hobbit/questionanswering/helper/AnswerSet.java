@@ -0,0 +1,145 @@
+package org.hobbit.questionanswering.helper;
+
+import java.util.Arrays;
+
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.atlas.json.JsonValue;
+
+/**
+ * The answers of a question in QALD format as a sorted set of 64 bit hashes,
+ * one per distinct URI, literal or boolean answer. Two answer sets are compared by merging their hashes,
+ * without keeping or comparing the answer strings.
+ */
+public class AnswerSet {
+	public static final AnswerSet EMPTY = new AnswerSet(new long[0]);
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private long[] hashes;
+
+	private AnswerSet(long[] hashes) {
+		this.hashes = hashes;
+	}
+
+	/**
+	 * To collect the answers of a QALD document, i.e. of all of its questions.
+	 * Every value of every binding is an answer, a boolean answer is an answer "true" or "false".
+	 * @param qald : QALD document with a "questions" array
+	 * @return the answer set, empty if the document has no answers
+	 */
+	public static AnswerSet fromQald(JsonObject qald) {
+		long[] hashes = new long[16];
+		int size = 0;
+		if(qald.hasKey("questions") && qald.get("questions").isArray()) {
+			for(JsonValue question:qald.get("questions").getAsArray()) {
+				if(!question.isObject() || !question.getAsObject().hasKey("answers") || !question.getAsObject().get("answers").isArray())
+					continue;
+				for(JsonValue answer:question.getAsObject().get("answers").getAsArray()) {
+					if(!answer.isObject())
+						continue;
+					JsonObject result = answer.getAsObject();
+					if(result.hasKey("boolean")) {
+						if(size==hashes.length)
+							hashes = Arrays.copyOf(hashes, 2*size);
+						hashes[size++] = hash(String.valueOf(result.get("boolean").isBoolean()
+								? result.get("boolean").getAsBoolean().value() : Boolean.parseBoolean(text(result.get("boolean")))));
+						continue;
+					}
+					if(!result.hasKey("results") || !result.get("results").isObject())
+						continue;
+					JsonValue bindings = result.get("results").getAsObject().get("bindings");
+					if(bindings==null || !bindings.isArray())
+						continue;
+					for(JsonValue binding:bindings.getAsArray()) {
+						if(!binding.isObject())
+							continue;
+						for(String variable:binding.getAsObject().keys()) {
+							JsonValue value = binding.getAsObject().get(variable);
+							if(!value.isObject() || !value.getAsObject().hasKey("value"))
+								continue;
+							if(size==hashes.length)
+								hashes = Arrays.copyOf(hashes, 2*size);
+							hashes[size++] = hash(text(value.getAsObject().get("value")).trim());
+						}
+					}
+				}
+			}
+		}
+		return of(hashes, size);
+	}
+
+	/**
+	 * @param hashes : hashes of answers, in any order and with duplicates
+	 * @param size : number of hashes to take
+	 * @return the answer set of the hashes
+	 */
+	public static AnswerSet of(long[] hashes,int size) {
+		if(size==0)
+			return EMPTY;
+		long[] sorted = Arrays.copyOf(hashes, size);
+		Arrays.sort(sorted);
+		int distinct = 1;
+		for(int i=1;i<sorted.length;i++) {
+			if(sorted[i]!=sorted[distinct-1])
+				sorted[distinct++] = sorted[i];
+		}
+		return new AnswerSet(distinct==sorted.length ? sorted : Arrays.copyOf(sorted, distinct));
+	}
+
+	/**
+	 * @return number of distinct answers
+	 */
+	public int size() {
+		return hashes.length;
+	}
+
+	/**
+	 * @param other : another answer set
+	 * @return number of answers in both sets
+	 */
+	public int intersectionSize(AnswerSet other) {
+		int common = 0;
+		int i = 0;
+		int j = 0;
+		while(i<this.hashes.length && j<other.hashes.length) {
+			if(this.hashes[i]<other.hashes[j])
+				i++;
+			else if(this.hashes[i]>other.hashes[j])
+				j++;
+			else {
+				common++;
+				i++;
+				j++;
+			}
+		}
+		return common;
+	}
+
+	/**
+	 * 64 bit FNV-1a of the characters, with a final avalanche step so nearby strings (e.g. numbered resources)
+	 * spread over the whole range. Collisions are negligible for answer sets of up to millions of answers.
+	 * @param value : an answer
+	 * @return its hash
+	 */
+	public static long hash(String value) {
+		long hash = FNV_OFFSET;
+		for(int i=0;i<value.length();i++) {
+			hash ^= value.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		hash ^= hash>>>33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash>>>33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash>>>33;
+		return hash;
+	}
+
+	/*
+	 * The string of a Json value, without the quotes of a Json string.
+	 */
+	private static String text(JsonValue value) {
+		return value.isString() ? value.getAsString().value() : value.toString();
+	}
+}
@@ -0,0 +1,69 @@
+package org.hobbit.questionanswering.helper;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Arrival processes of the open-loop dispatch mode.
+ * An arrival process plans the send time of every task as an offset from the start instant,
+ * independent of the responses of the system.
+ */
+public class ArrivalProcess {
+	public static final String POISSON = "poisson";
+	public static final String CONSTANT = "constant";
+	public static final String BURST = "burst";
+	public static final String STEP = "step";
+
+	private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private ArrivalProcess() {
+	}
+
+	/**
+	 * To plan the arrivals of a number of tasks.
+	 * <ul>
+	 * <li>poisson: exponentially distributed inter-arrival times with the given mean rate (seeded)</li>
+	 * <li>constant: one task every 1/rate seconds</li>
+	 * <li>burst: burstSize tasks at once, bursts follow each other at the given mean rate</li>
+	 * <li>step: the rate grows by the given rate after every step (rate, 2*rate, 3*rate, ...)</li>
+	 * </ul>
+	 * @param process : name of the arrival process
+	 * @param numberOfTasks : number of tasks to plan
+	 * @param rate : tasks per second
+	 * @param burstSize : tasks per burst (burst)
+	 * @param stepNanos : duration of a step in nanoseconds (step)
+	 * @param seed : for randomization (poisson)
+	 * @return offset in nanoseconds from the start instant, per task
+	 */
+	public static long[] plan(String process,int numberOfTasks,double rate,int burstSize,long stepNanos,long seed) {
+		if(rate<=0)
+			throw new IllegalArgumentException("Arrival rate must be positive: "+rate);
+		long[] offsets = new long[numberOfTasks];
+		double time = 0;
+		if(POISSON.equalsIgnoreCase(process)) {
+			Random random = new Random(seed);
+			for(int i=0;i<numberOfTasks;i++) {
+				offsets[i] = Math.round(time);
+				time += -Math.log(1-random.nextDouble())/rate*NANOS_PER_SECOND;
+			}
+		}else if(CONSTANT.equalsIgnoreCase(process)) {
+			for(int i=0;i<numberOfTasks;i++)
+				offsets[i] = Math.round(i/rate*NANOS_PER_SECOND);
+		}else if(BURST.equalsIgnoreCase(process)) {
+			int size = Math.max(1, burstSize);
+			for(int i=0;i<numberOfTasks;i++)
+				offsets[i] = Math.round((i/size)*size/rate*NANOS_PER_SECOND);
+		}else if(STEP.equalsIgnoreCase(process)) {
+			if(stepNanos<=0)
+				throw new IllegalArgumentException("Step duration must be positive: "+stepNanos);
+			for(int i=0;i<numberOfTasks;i++) {
+				offsets[i] = Math.round(time);
+				long step = (long)(time/stepNanos);
+				time += NANOS_PER_SECOND/(rate*(step+1));
+			}
+		}else {
+			throw new IllegalArgumentException("Unknown arrival process: "+process);
+		}
+		return offsets;
+	}
+}
@@ -0,0 +1,297 @@
+package org.hobbit.questionanswering.helper;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.atlas.json.JsonValue;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hobbit.QaldBuilder;
+
+/**
+ * A precompiled, indexed binary form of a Json data set.
+ * <p>
+ * Layout: a header (magic, version, number of records, offset of the index, length and SHA-256 of the Json data set),
+ * the length-prefixed records and an index with the offset of every record.
+ * A record holds the question id, its number of triples (-1 if unknown), the onlydbo flag,
+ * the position of each language in its question array and the question itself as Json.
+ * </p>
+ * The file is memory-mapped, so only the records which are actually read get decoded,
+ * and it is only used while it matches the Json data set it was compiled from.
+ */
+public class BinaryDataset {
+	private static final Logger LOGGER = LogManager.getLogger(BinaryDataset.class);
+
+	public static final String EXTENSION = ".qab";
+
+	private static final int MAGIC = 0x51414453; // "QADS"
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 60;
+
+	private MappedByteBuffer buffer;
+	private int size;
+	private long indexOffset;
+
+	/**
+	 * To open and memory-map a precompiled data set.
+	 * @param fileName : the precompiled file (.qab)
+	 * @throws IOException
+	 */
+	public BinaryDataset(String fileName) throws IOException {
+		try(FileChannel channel = FileChannel.open(new File(fileName).toPath(), StandardOpenOption.READ)) {
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if(this.buffer.getInt(0)!=MAGIC || this.buffer.getInt(4)!=VERSION)
+			throw new IOException("Not a precompiled data set of version "+VERSION+": "+fileName);
+		this.size = this.buffer.getInt(8);
+		this.indexOffset = this.buffer.getLong(12);
+	}
+
+	/**
+	 * @return number of records in the data set
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * To read the meta data of a record without decoding its Json.
+	 * @param index : the record number
+	 * @return the record header
+	 */
+	public Record getRecord(int index) {
+		ByteBuffer record = this.recordBuffer(index);
+		Record header = new Record();
+		header.index = index;
+		header.id = record.getInt();
+		header.triple = record.getInt();
+		header.onlydbo = record.get()!=0;
+		int languages = record.getShort();
+		header.languages = new LinkedHashMap<String, Integer>();
+		for(int i=0;i<languages;i++) {
+			byte[] lang = new byte[record.get()];
+			record.get(lang);
+			header.languages.put(new String(lang, StandardCharsets.UTF_8), (int)record.getShort());
+		}
+		header.jsonOffset = record.position();
+		return header;
+	}
+
+	/**
+	 * To decode the Json of a record.
+	 * @param record : the record header
+	 * @return the question as Json string
+	 */
+	public String getJson(Record record) {
+		ByteBuffer buffer = this.recordBuffer(record.index);
+		buffer.position(record.jsonOffset);
+		byte[] json = new byte[buffer.getInt()];
+		buffer.get(json);
+		return new String(json, StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * A view of a record, positioned after its length prefix.
+	 */
+	private ByteBuffer recordBuffer(int index) {
+		if(index<0 || index>=this.size)
+			throw new IndexOutOfBoundsException("Record "+index+" of "+this.size);
+		int offset = (int)this.buffer.getLong((int)(this.indexOffset+8L*index));
+		ByteBuffer record = this.buffer.duplicate();
+		int length = record.getInt(offset);
+		record.position(offset+4);
+		record.limit(offset+4+length);
+		return record.slice();
+	}
+
+	/**
+	 * To get the precompiled file which belongs to a Json data set.
+	 * @param fileName : Data set file name (json)
+	 * @return the precompiled file, which may not exist
+	 */
+	public static File fileFor(String fileName) {
+		String base = fileName.endsWith(".json") ? fileName.substring(0, fileName.length()-5) : fileName;
+		return new File(base+EXTENSION);
+	}
+
+	/**
+	 * To get the precompiled file of a Json data set, if it was compiled from the data set as it is now.
+	 * @param fileName : Data set file name (json)
+	 * @return the precompiled file, null if there is none or it is outdated
+	 */
+	public static File currentFileFor(String fileName) {
+		File precompiled = fileFor(fileName);
+		if(!precompiled.exists())
+			return null;
+		File source = new File(fileName);
+		if(!source.exists())
+			return precompiled;
+		try(DataInputStream in = new DataInputStream(new FileInputStream(precompiled))) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			if(precompiled.length()>=HEADER_SIZE)
+				in.readFully(header.array());
+			if(precompiled.length()<HEADER_SIZE || header.getInt(0)!=MAGIC || header.getInt(4)!=VERSION) {
+				LOGGER.info("BinaryDataset: "+precompiled+" has an old format, loading "+fileName+".");
+				return null;
+			}
+			byte[] checksum = new byte[32];
+			header.position(28);
+			header.get(checksum);
+			// the length rules out most changes without reading the data set
+			if(header.getLong(20)!=source.length() || !Arrays.equals(checksum, DatasetSnapshot.checksum(source))) {
+				LOGGER.info("BinaryDataset: "+precompiled+" doesn't match "+fileName+", loading the Json data set.");
+				return null;
+			}
+		}catch(IOException e) {
+			LOGGER.error("BinaryDataset: Couldn't check "+precompiled+", loading "+fileName+".", e);
+			return null;
+		}
+		return precompiled;
+	}
+
+	/**
+	 * To write a precompiled data set.
+	 * @param questions : the questions of the Json data set
+	 * @param source : the Json data set
+	 * @param file : the output file
+	 * @throws IOException
+	 */
+	public static void write(List<JsonValue> questions,File source,File file) throws IOException {
+		long[] offsets = new long[questions.size()];
+		long indexOffset;
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(questions.size());
+			out.writeLong(0); // index offset, written at the end
+			out.writeLong(source.length());
+			out.write(DatasetSnapshot.checksum(source));
+			for(int i=0;i<questions.size();i++) {
+				offsets[i] = out.size();
+				byte[] record = encode(questions.get(i));
+				out.writeInt(record.length);
+				out.write(record);
+			}
+			indexOffset = out.size();
+			for(long offset:offsets)
+				out.writeLong(offset);
+			out.flush();
+			if(indexOffset>Integer.MAX_VALUE)
+				throw new IOException("Data set is too large for a precompiled file: "+file);
+		}
+		// patch the index offset into the header
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			ByteBuffer index = ByteBuffer.allocate(8);
+			index.putLong(0, indexOffset);
+			channel.write(index, 12);
+		}
+	}
+
+	/*
+	 * Encodes the meta data and Json of a single question.
+	 */
+	private static byte[] encode(JsonValue quest) throws IOException {
+		JsonObject object = quest.getAsObject();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(object.hasKey("id") ? Integer.parseInt(object.get("id").toString().replace("\"", "").trim()) : -1);
+		out.writeInt(tripleOf(quest));
+		out.writeByte(object.hasKey("onlydbo") && Boolean.parseBoolean(object.get("onlydbo").toString()) ? 1 : 0);
+		Map<String, Integer> languages = new LinkedHashMap<String, Integer>();
+		if(object.hasKey("question") && object.get("question").isArray()) {
+			JsonArray questionArray = object.get("question").getAsArray();
+			for(int i=0;i<questionArray.size();i++) {
+				JsonObject question = questionArray.get(i).getAsObject();
+				if(question.hasKey("language"))
+					languages.put(question.get("language").toString().trim().replace("\"", "").toLowerCase(), i);
+			}
+		}
+		out.writeShort(languages.size());
+		for(Map.Entry<String, Integer> language:languages.entrySet()) {
+			byte[] lang = language.getKey().getBytes(StandardCharsets.UTF_8);
+			out.writeByte(lang.length);
+			out.write(lang);
+			out.writeShort(language.getValue());
+		}
+		byte[] json = quest.toString().getBytes(StandardCharsets.UTF_8);
+		out.writeInt(json.length);
+		out.write(json);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/*
+	 * Number of triples as seen by QaldBuilder, -1 if the question has none.
+	 */
+	private static int tripleOf(JsonValue quest) {
+		try {
+			QaldBuilder qald = new QaldBuilder();
+			qald.setQuestionAsJson(quest.toString());
+			return qald.getTriple();
+		}catch(Exception e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * The meta data of a precompiled question.
+	 */
+	public static class Record {
+		private int index;
+		private int id;
+		private int triple;
+		private boolean onlydbo;
+		private Map<String, Integer> languages;
+		private int jsonOffset;
+
+		public int getIndex() {
+			return index;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public int getTriple() {
+			return triple;
+		}
+
+		public boolean isOnlydbo() {
+			return onlydbo;
+		}
+
+		/**
+		 * @return the languages the question is available in
+		 */
+		public Set<String> getLanguages() {
+			return languages.keySet();
+		}
+
+		/**
+		 * @param lang : the question language
+		 * @return position of the language in the question array, -1 if the question is not available in it
+		 */
+		public int getLanguageIndex(String lang) {
+			Integer index = languages.get(lang.toLowerCase());
+			return index==null ? -1 : index;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package org.hobbit.questionanswering.helper;
+
+import java.io.File;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Build time converter of the Json data sets into precompiled {@link BinaryDataset} files.
+ * Every argument is a Json data set, the output is written next to it with the extension .qab,
+ * together with its {@link DatasetIndex} (.qai).
+ * Run by the "precompile-datasets" Maven profile.
+ */
+public class DatasetConverter {
+	private static final Logger LOGGER = LogManager.getLogger(DatasetConverter.class);
+
+	public static void main(String[] args) throws Exception {
+		if(args.length==0)
+			throw new IllegalArgumentException("Usage: DatasetConverter <dataset.json>...");
+		for(String fileName:args) {
+			if(!new File(fileName).exists()) {
+				LOGGER.error("DatasetConverter: "+fileName+" doesn't exist, skipping it.");
+				continue;
+			}
+			long start = System.currentTimeMillis();
+			JsonArray questions = JSON.readAny(fileName).getAsArray();
+			File output = BinaryDataset.fileFor(fileName);
+			BinaryDataset.write(questions, new File(fileName), output);
+			File index = DatasetIndex.fileFor(output);
+			DatasetIndex.build(new BinaryDataset(output.getPath()), output).write(index);
+			LOGGER.info("DatasetConverter: "+fileName+" -> "+output+" ("+questions.size()+" questions, "
+					+output.length()+" bytes, index "+index+", "+(System.currentTimeMillis()-start)+" ms)");
+		}
+	}
+}
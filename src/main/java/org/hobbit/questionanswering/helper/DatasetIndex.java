@@ -0,0 +1,176 @@
+package org.hobbit.questionanswering.helper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A sidecar index of a precompiled {@link BinaryDataset}.
+ * It lists the record numbers per number of triples, per language and per onlydbo flag,
+ * so matching questions are found without reading every record header.
+ */
+public class DatasetIndex {
+	public static final String EXTENSION = ".qai";
+
+	private static final int MAGIC = 0x51414449; // "QADI"
+	private static final int VERSION = 1;
+	private static final int[] EMPTY = new int[0];
+
+	private long datasetLength;
+	private Map<Integer, int[]> triples;
+	private Map<String, int[]> languages;
+	private int[] onlydbo;
+	private int[] notOnlydbo;
+
+	private DatasetIndex() {
+		this.triples = new TreeMap<Integer, int[]>();
+		this.languages = new TreeMap<String, int[]>();
+	}
+
+	/**
+	 * @param triple : number of triples
+	 * @return the record numbers of questions with this number of triples
+	 */
+	public int[] getTripleBucket(int triple) {
+		int[] bucket = triples.get(triple);
+		return bucket==null ? EMPTY : bucket;
+	}
+
+	/**
+	 * @param lang : the question language
+	 * @return the record numbers of questions available in this language
+	 */
+	public int[] getLanguageBucket(String lang) {
+		int[] bucket = languages.get(lang.toLowerCase());
+		return bucket==null ? EMPTY : bucket;
+	}
+
+	/**
+	 * @param flag : the onlydbo flag
+	 * @return the record numbers of questions with this onlydbo flag
+	 */
+	public int[] getOnlydboBucket(boolean flag) {
+		return flag ? onlydbo : notOnlydbo;
+	}
+
+	/**
+	 * To build the index of a precompiled data set.
+	 * @param dataset : the precompiled data set
+	 * @param datasetFile : the file of the data set
+	 * @return the index
+	 */
+	public static DatasetIndex build(BinaryDataset dataset,File datasetFile) {
+		Map<Integer, List<Integer>> triples = new TreeMap<Integer, List<Integer>>();
+		Map<String, List<Integer>> languages = new TreeMap<String, List<Integer>>();
+		List<Integer> onlydbo = new ArrayList<Integer>();
+		List<Integer> notOnlydbo = new ArrayList<Integer>();
+		for(int i=0;i<dataset.size();i++) {
+			BinaryDataset.Record record = dataset.getRecord(i);
+			triples.computeIfAbsent(record.getTriple(), k -> new ArrayList<Integer>()).add(i);
+			for(String lang:record.getLanguages())
+				languages.computeIfAbsent(lang, k -> new ArrayList<Integer>()).add(i);
+			(record.isOnlydbo() ? onlydbo : notOnlydbo).add(i);
+		}
+		DatasetIndex index = new DatasetIndex();
+		index.datasetLength = datasetFile.length();
+		for(Map.Entry<Integer, List<Integer>> bucket:triples.entrySet())
+			index.triples.put(bucket.getKey(), toArray(bucket.getValue()));
+		for(Map.Entry<String, List<Integer>> bucket:languages.entrySet())
+			index.languages.put(bucket.getKey(), toArray(bucket.getValue()));
+		index.onlydbo = toArray(onlydbo);
+		index.notOnlydbo = toArray(notOnlydbo);
+		return index;
+	}
+
+	/**
+	 * To write the index.
+	 * @param file : the index file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(this.datasetLength);
+			out.writeInt(this.triples.size());
+			for(Map.Entry<Integer, int[]> bucket:this.triples.entrySet()) {
+				out.writeInt(bucket.getKey());
+				writeBucket(out, bucket.getValue());
+			}
+			out.writeInt(this.languages.size());
+			for(Map.Entry<String, int[]> bucket:this.languages.entrySet()) {
+				out.writeUTF(bucket.getKey());
+				writeBucket(out, bucket.getValue());
+			}
+			writeBucket(out, this.onlydbo);
+			writeBucket(out, this.notOnlydbo);
+		}
+	}
+
+	/**
+	 * To read the index of a precompiled data set.
+	 * @param datasetFile : the file of the data set
+	 * @return the index, or null if there is no index or it doesn't belong to the data set file
+	 * @throws IOException
+	 */
+	public static DatasetIndex read(File datasetFile) throws IOException {
+		File file = fileFor(datasetFile);
+		if(!file.exists())
+			return null;
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(in.readInt()!=MAGIC || in.readInt()!=VERSION || in.readLong()!=datasetFile.length())
+				return null;
+			DatasetIndex index = new DatasetIndex();
+			index.datasetLength = datasetFile.length();
+			int size = in.readInt();
+			for(int i=0;i<size;i++)
+				index.triples.put(in.readInt(), readBucket(in));
+			size = in.readInt();
+			for(int i=0;i<size;i++)
+				index.languages.put(in.readUTF(), readBucket(in));
+			index.onlydbo = readBucket(in);
+			index.notOnlydbo = readBucket(in);
+			return index;
+		}
+	}
+
+	/**
+	 * @param datasetFile : the file of a precompiled data set
+	 * @return the index file which belongs to it
+	 */
+	public static File fileFor(File datasetFile) {
+		String name = datasetFile.getPath();
+		if(name.endsWith(BinaryDataset.EXTENSION))
+			name = name.substring(0, name.length()-BinaryDataset.EXTENSION.length());
+		return new File(name+EXTENSION);
+	}
+
+	private static void writeBucket(DataOutputStream out,int[] bucket) throws IOException {
+		out.writeInt(bucket.length);
+		for(int record:bucket)
+			out.writeInt(record);
+	}
+
+	private static int[] readBucket(DataInputStream in) throws IOException {
+		int[] bucket = new int[in.readInt()];
+		for(int i=0;i<bucket.length;i++)
+			bucket[i] = in.readInt();
+		return bucket;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for(int i=0;i<array.length;i++)
+			array[i] = list.get(i);
+		return array;
+	}
+}
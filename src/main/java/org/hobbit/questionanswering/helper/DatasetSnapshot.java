@@ -0,0 +1,258 @@
+package org.hobbit.questionanswering.helper;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonValue;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A prepared question pool of a Json data set: all candidate questions of one variant
+ * (all questions, a number of triples or a language) in the order of the data set,
+ * each with its resolved answers or marked as unanswered.
+ * <p>
+ * Layout: a header (magic, version, variant, SPARQL service, SHA-256 of the Json data set, number of candidates)
+ * and per candidate a flag whether it has answers, followed by the length-prefixed question as Json if it has.
+ * </p>
+ * Snapshots are written at build time by {@link #main(String[])}, a snapshot is only used
+ * while its checksum matches the Json data set.
+ */
+public class DatasetSnapshot {
+	private static final Logger LOGGER = LogManager.getLogger(DatasetSnapshot.class);
+
+	public static final String EXTENSION = ".qas";
+	public static final String ALL = "all";
+	public static final String TRIPLE_PREFIX = "triple-";
+	public static final String LANGUAGE_PREFIX = "lang-";
+
+	private static final int MAGIC = 0x5141534E; // "QASN"
+	private static final int VERSION = 1;
+
+	private byte[] data;
+	private int[] offsets;
+
+	private DatasetSnapshot(byte[] data,int[] offsets) {
+		this.data = data;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * @param triple : number of triples
+	 * @return the variant of the questions with that number of triples
+	 */
+	public static String triple(int triple) {
+		return TRIPLE_PREFIX+triple;
+	}
+
+	/**
+	 * @param lang : the questions language
+	 * @return the variant of the questions in that language
+	 */
+	public static String language(String lang) {
+		return LANGUAGE_PREFIX+lang.toLowerCase();
+	}
+
+	/**
+	 * @param fileName : the Json data set
+	 * @param variant : the variant of the questions
+	 * @return the snapshot file next to the data set, e.g. data/largescale_testing.all.qas
+	 */
+	public static File fileFor(String fileName,String variant) {
+		String base = fileName.endsWith(".json") ? fileName.substring(0, fileName.length()-5) : fileName;
+		return new File(base+"."+variant+EXTENSION);
+	}
+
+	/**
+	 * To write a snapshot.
+	 * @param file : the output file
+	 * @param fileName : the Json data set the candidates come from
+	 * @param variant : the variant of the questions
+	 * @param sparqlService : the SPARQL service which resolved the answers
+	 * @param candidates : for every candidate the question with answers, or null if it has none
+	 * @throws IOException
+	 */
+	public static void write(File file,String fileName,String variant,String sparqlService,List<JsonValue> candidates) throws IOException {
+		File tmp = new File(file.getPath()+".tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(variant);
+			out.writeUTF(sparqlService);
+			out.write(checksum(new File(fileName)));
+			out.writeInt(candidates.size());
+			for(JsonValue candidate:candidates) {
+				out.writeBoolean(candidate!=null);
+				if(candidate!=null) {
+					byte[] json = candidate.toString().getBytes(StandardCharsets.UTF_8);
+					out.writeInt(json.length);
+					out.write(json);
+				}
+			}
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * To read the snapshot of a data set.
+	 * @param fileName : the Json data set
+	 * @param variant : the variant of the questions
+	 * @param sparqlService : the SPARQL service the answers must come from
+	 * @return the snapshot, null if there is none or it doesn't match the data set, the variant or the SPARQL service
+	 * @throws IOException
+	 */
+	public static DatasetSnapshot read(String fileName,String variant,String sparqlService) throws IOException {
+		File file = fileFor(fileName, variant);
+		if(!file.exists())
+			return null;
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		if(buffer.getInt()!=MAGIC || buffer.getInt()!=VERSION) {
+			LOGGER.info("DatasetSnapshot: "+file+" has an old format, ignoring it.");
+			return null;
+		}
+		if(!variant.equals(readUTF(buffer)) || !sparqlService.equals(readUTF(buffer))) {
+			LOGGER.info("DatasetSnapshot: "+file+" was prepared for another variant or SPARQL service, ignoring it.");
+			return null;
+		}
+		byte[] checksum = new byte[32];
+		buffer.get(checksum);
+		if(!new File(fileName).exists() || !Arrays.equals(checksum, checksum(new File(fileName)))) {
+			LOGGER.info("DatasetSnapshot: "+file+" doesn't match the checksum of "+fileName+", ignoring it.");
+			return null;
+		}
+		int[] offsets = new int[buffer.getInt()];
+		for(int i=0;i<offsets.length;i++) {
+			if(buffer.get()!=0) {
+				offsets[i] = buffer.position();
+				buffer.position(buffer.position()+4+buffer.getInt(buffer.position()));
+			}else {
+				offsets[i] = -1;
+			}
+		}
+		return new DatasetSnapshot(buffer.array(), offsets);
+	}
+
+	/**
+	 * @return number of candidates
+	 */
+	public int size() {
+		return offsets.length;
+	}
+
+	/**
+	 * @param index : position of the candidate
+	 * @return true if the candidate has answers
+	 */
+	public boolean hasAnswers(int index) {
+		return offsets[index]>=0;
+	}
+
+	/**
+	 * @param index : position of a candidate with answers
+	 * @return the question with answers in Qald format
+	 */
+	public JsonValue getQuestion(int index) {
+		int length = ByteBuffer.wrap(data).getInt(offsets[index]);
+		return JSON.parseAny(new String(data, offsets[index]+4, length, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param file : a file
+	 * @return SHA-256 of its content
+	 * @throws IOException
+	 */
+	public static byte[] checksum(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		try(InputStream in = new FileInputStream(file)) {
+			byte[] buffer = new byte[1<<16];
+			int read;
+			while((read = in.read(buffer))!=-1)
+				digest.update(buffer, 0, read);
+		}
+		return digest.digest();
+	}
+
+	private static String readUTF(ByteBuffer buffer) {
+		int length = buffer.getShort()&0xFFFF;
+		String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position()+length);
+		return value;
+	}
+
+	/**
+	 * Build time preparation of snapshots, run by the "snapshot-datasets" Maven profile.
+	 * The first argument is the SPARQL service, every further argument is a Json data set and a variant,
+	 * separated by a colon: all, triple-N or lang-xx.
+	 * @param args : the arguments
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length<2)
+			throw new IllegalArgumentException("Usage: DatasetSnapshot <sparql service> <dataset.json>:<variant>...");
+		String sparqlService = args[0];
+		SparqlHttpClient.install(System.getenv(), Runtime.getRuntime().availableProcessors(), AnswerResolver.DEFAULT_QUERY_TIMEOUT);
+		try {
+			snapshot(sparqlService, Arrays.copyOfRange(args, 1, args.length));
+		}finally {
+			SparqlHttpClient.close();
+		}
+	}
+
+	/*
+	 * Prepares the snapshots of the given data sets and variants. A snapshot with failed queries isn't written,
+	 * it would mark their questions as unanswered for good, the build fails once all others are written.
+	 */
+	private static void snapshot(String sparqlService,String[] datasets) throws Exception {
+		int failed = 0;
+		for(String dataset:datasets) {
+			int split = dataset.lastIndexOf(':');
+			String fileName = split>0 ? dataset.substring(0, split) : dataset;
+			String variant = split>0 ? dataset.substring(split+1) : ALL;
+			if(!new File(fileName).exists()) {
+				LOGGER.error("DatasetSnapshot: "+fileName+" doesn't exist, skipping it.");
+				continue;
+			}
+			long start = System.currentTimeMillis();
+			QaHelper qaHelper = new QaHelper(0, 0, sparqlService);
+			qaHelper.setAnswerResolution(Runtime.getRuntime().availableProcessors(), 4*Runtime.getRuntime().availableProcessors(), 0);
+			List<JsonValue> candidates;
+			try {
+				candidates = qaHelper.resolveCandidates(fileName, variant);
+			}catch(IOException e) {
+				LOGGER.error("DatasetSnapshot: "+fileName+" ("+variant+"): "+e.getMessage()+" Not writing the snapshot.");
+				failed++;
+				continue;
+			}
+			int answered = 0;
+			for(JsonValue candidate:candidates) {
+				if(candidate!=null)
+					answered++;
+			}
+			File output = fileFor(fileName, variant);
+			write(output, fileName, variant, sparqlService, candidates);
+			LOGGER.info("DatasetSnapshot: "+fileName+" ("+variant+") -> "+output+" ("+answered+" of "+candidates.size()
+					+" questions have answers, "+output.length()+" bytes, "+(System.currentTimeMillis()-start)+" ms)");
+		}
+		if(failed>0)
+			throw new IOException(failed+" of "+datasets.length+" snapshots weren't written, since queries failed.");
+	}
+}
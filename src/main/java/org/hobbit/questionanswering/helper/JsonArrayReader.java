@@ -0,0 +1,125 @@
+package org.hobbit.questionanswering.helper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the elements of a Json file holding a single top level array one by one,
+ * so a data set never has to be materialized as a whole.
+ * Every element is returned as its raw Json text.
+ */
+public class JsonArrayReader implements Iterator<String>, Closeable {
+	private PushbackReader reader;
+	private String fileName;
+	private String next;
+	private boolean started;
+	private boolean finished;
+
+	/**
+	 * The class constructor
+	 * @param fileName : Data set file name (json)
+	 * @throws IOException
+	 */
+	public JsonArrayReader(String fileName) throws IOException {
+		this.fileName = fileName;
+		this.reader = new PushbackReader(new BufferedReader(new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8), 1 << 16));
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(this.next==null && !this.finished) {
+			try {
+				this.next = this.readElement();
+			}catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return this.next!=null;
+	}
+
+	@Override
+	public String next() {
+		if(!this.hasNext())
+			throw new NoSuchElementException();
+		String element = this.next;
+		this.next = null;
+		return element;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.reader.close();
+	}
+
+	/*
+	 * Reads the next element of the array, null after the closing bracket.
+	 */
+	private String readElement() throws IOException {
+		int c;
+		if(!this.started) {
+			c = this.skipWhitespace();
+			if(c!='[')
+				throw new IllegalStateException("QaHelper: "+this.fileName+" doesn't contain a Json array.");
+			this.started = true;
+		}
+		c = this.skipWhitespace();
+		if(c==',')
+			c = this.skipWhitespace();
+		if(c==']' || c==-1) {
+			this.finished = true;
+			return null;
+		}
+
+		StringBuilder element = new StringBuilder();
+		if(c!='{' && c!='[' && c!='"') {
+			// a scalar element ends before the next separator
+			while(c!=-1 && c!=',' && c!=']') {
+				element.append((char)c);
+				c = this.reader.read();
+			}
+			if(c!=-1)
+				this.reader.unread(c);
+			return element.toString().trim();
+		}
+
+		int depth = 0;
+		boolean inString = false;
+		boolean escaped = false;
+		while(c!=-1) {
+			element.append((char)c);
+			if(inString) {
+				if(escaped)
+					escaped = false;
+				else if(c=='\\')
+					escaped = true;
+				else if(c=='"')
+					inString = false;
+			}else if(c=='"') {
+				inString = true;
+			}else if(c=='{' || c=='[') {
+				depth++;
+			}else if(c=='}' || c==']') {
+				depth--;
+			}
+			if(!inString && depth==0)
+				return element.toString();
+			c = this.reader.read();
+		}
+		throw new IllegalStateException("QaHelper: Unexpected end of "+this.fileName+".");
+	}
+
+	private int skipWhitespace() throws IOException {
+		int c = this.reader.read();
+		while(c!=-1 && Character.isWhitespace(c))
+			c = this.reader.read();
+		return c;
+	}
+}
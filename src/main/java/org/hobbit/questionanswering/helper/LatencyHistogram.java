@@ -0,0 +1,116 @@
+package org.hobbit.questionanswering.helper;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A log-linear histogram of latencies in nanoseconds, in the style of HdrHistogram.
+ * Every power of two is split into 64 buckets, so a recorded value is kept with a relative error below 1.6%,
+ * from a nanosecond up to the range of a long. Histograms of the same kind can be merged,
+ * e.g. those of several task generators.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int HALF_SUB_BUCKETS = 1<<(SUB_BUCKET_BITS-1);
+	private static final int BUCKETS = (64-SUB_BUCKET_BITS)*HALF_SUB_BUCKETS+2*HALF_SUB_BUCKETS;
+
+	private long[] counts = new long[BUCKETS];
+	private long count;
+	private long max;
+
+	/**
+	 * @param nanos : a latency, negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		this.counts[index(value)]++;
+		this.count++;
+		this.max = Math.max(this.max, value);
+	}
+
+	/**
+	 * To add the values of another histogram.
+	 * @param other : the histogram
+	 */
+	public void merge(LatencyHistogram other) {
+		for(int i=0;i<BUCKETS;i++)
+			this.counts[i] += other.counts[i];
+		this.count += other.count;
+		this.max = Math.max(this.max, other.max);
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return largest recorded value, 0 if there is none
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * @param percentile : between 0 and 100
+	 * @return a value that percentile percent of the recorded values are not above, 0 if there is none
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if(this.count==0)
+			return 0;
+		long target = Math.max(1, (long)Math.ceil(percentile/100*this.count));
+		long seen = 0;
+		for(int i=0;i<BUCKETS;i++) {
+			seen += this.counts[i];
+			if(seen>=target)
+				return Math.min(highestValue(i), this.max);
+		}
+		return this.max;
+	}
+
+	/**
+	 * @return the histogram as bytes, only buckets with values are written
+	 */
+	public byte[] toBytes() {
+		int used = 0;
+		for(long bucket:this.counts) {
+			if(bucket>0)
+				used++;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(8+8+4+used*12);
+		buffer.putLong(this.count).putLong(this.max).putInt(used);
+		for(int i=0;i<BUCKETS;i++) {
+			if(this.counts[i]>0)
+				buffer.putInt(i).putLong(this.counts[i]);
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * @param buffer : a buffer positioned at a histogram written by {@link #toBytes()}
+	 * @return the histogram
+	 */
+	public static LatencyHistogram fromBytes(ByteBuffer buffer) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.count = buffer.getLong();
+		histogram.max = buffer.getLong();
+		int used = buffer.getInt();
+		for(int i=0;i<used;i++) {
+			int index = buffer.getInt();
+			histogram.counts[index] = buffer.getLong();
+		}
+		return histogram;
+	}
+
+	private static int index(long value) {
+		int shift = Math.max(0, 63-Long.numberOfLeadingZeros(value)-(SUB_BUCKET_BITS-1));
+		return shift*HALF_SUB_BUCKETS+(int)(value>>>shift);
+	}
+
+	private static long highestValue(int index) {
+		int shift = Math.max(0, index/HALF_SUB_BUCKETS-1);
+		long lowest = (long)(index-shift*HALF_SUB_BUCKETS)<<shift;
+		return lowest+(1L<<shift)-1;
+	}
+}
@@ -0,0 +1,147 @@
+package org.hobbit.questionanswering.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSetFormatter;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A SPARQL endpoint in the process of a component, which answers SELECT and ASK queries
+ * from an in-memory model loaded from an RDF dump (e.g. N-Triples).
+ * It stands in for the remote SPARQL service in offline runs, so answers don't depend on the network.
+ */
+public class LocalSparqlEndpoint implements Closeable {
+	private static final Logger LOGGER = LogManager.getLogger(LocalSparqlEndpoint.class);
+
+	private static final String PATH = "/sparql";
+
+	private Model model;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * The class constructor, loads the dump and starts the endpoint on a free port of the loopback interface.
+	 * @param dumpFile : the RDF dump, its syntax is taken from the file extension (.nt, .ttl, also gzipped)
+	 * @throws IOException if the endpoint can't be started
+	 */
+	public LocalSparqlEndpoint(String dumpFile) throws IOException {
+		long start = System.currentTimeMillis();
+		this.model = ModelFactory.createDefaultModel();
+		RDFDataMgr.read(this.model, dumpFile);
+		LOGGER.info("LocalSparqlEndpoint: Loaded "+this.model.size()+" triples from "+dumpFile
+				+" in "+(System.currentTimeMillis()-start)+" ms.");
+		this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+			Thread thread = new Thread(runnable, "qa-local-sparql");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.server.createContext(PATH, this::handle);
+		this.server.setExecutor(this.executor);
+		this.server.start();
+		LOGGER.info("LocalSparqlEndpoint: Serving queries on "+this.getUrl()+".");
+	}
+
+	/**
+	 * @return url of the endpoint
+	 */
+	public String getUrl() {
+		return "http://"+this.server.getAddress().getHostString()+":"+this.server.getAddress().getPort()+PATH;
+	}
+
+	/**
+	 * To stop the endpoint.
+	 */
+	@Override
+	public void close() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+		this.model.close();
+	}
+
+	/*
+	 * Answers a query of the SPARQL protocol, given as query parameter, form field or body.
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String queryString = this.queryOf(exchange);
+			if(queryString==null) {
+				this.respond(exchange, 400, "text/plain", "Missing query.".getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+			Query query = QueryFactory.create(queryString);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try(QueryExecution execution = QueryExecutionFactory.create(query, this.model)) {
+				if(query.isSelectType())
+					ResultSetFormatter.outputAsJSON(out, execution.execSelect());
+				else if(query.isAskType())
+					ResultSetFormatter.outputAsJSON(out, execution.execAsk());
+				else {
+					this.respond(exchange, 400, "text/plain", "Only SELECT and ASK queries are supported.".getBytes(StandardCharsets.UTF_8));
+					return;
+				}
+			}
+			this.respond(exchange, 200, "application/sparql-results+json", out.toByteArray());
+		}catch(RuntimeException e) {
+			LOGGER.error("LocalSparqlEndpoint: Couldn't answer query.", e);
+			this.respond(exchange, 400, "text/plain", String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private String queryOf(HttpExchange exchange) throws IOException {
+		String body;
+		try(InputStream in = exchange.getRequestBody()) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while((read = in.read(buffer))!=-1)
+				bytes.write(buffer, 0, read);
+			body = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		}
+		String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+		if(contentType!=null && contentType.startsWith("application/sparql-query"))
+			return body;
+		String query = parameter(exchange.getRequestURI().getRawQuery(), "query");
+		return query!=null ? query : parameter(body, "query");
+	}
+
+	private static String parameter(String form,String name) throws IOException {
+		if(form==null)
+			return null;
+		for(String pair:form.split("&")) {
+			int split = pair.indexOf('=');
+			if(split>0 && pair.substring(0, split).equals(name))
+				return URLDecoder.decode(pair.substring(split+1), "UTF-8");
+		}
+		return null;
+	}
+
+	private void respond(HttpExchange exchange,int status,String contentType,byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType+"; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package org.hobbit.questionanswering.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hobbit.core.rabbit.RabbitMQUtils;
+
+/**
+ * Groups messages into batches, so that a single publish carries several messages.
+ * A batch is sent once it holds the maximum number of messages or bytes, or once its first message
+ * waited for the linger time. A batch is a sequence of length-prefixed messages, see {@link #unbatch(byte[])}.
+ */
+public class MessageBatcher implements Closeable {
+	private static final Logger LOGGER = LogManager.getLogger(MessageBatcher.class);
+
+	/**
+	 * Sends a batch.
+	 */
+	public interface BatchSender {
+		void sendBatch(byte[] batch) throws IOException;
+	}
+
+	private int maxMessages;
+	private int maxBytes;
+	private long lingerMillis;
+	private BatchSender sender;
+	private ScheduledExecutorService scheduler;
+
+	private List<byte[]> messages = new ArrayList<byte[]>();
+	private long bytes;
+	private ScheduledFuture<?> lingerFlush;
+	private int sentBatches;
+	private IOException error;
+
+	/**
+	 * The class constructor
+	 * @param maxMessages : maximum number of messages per batch, 1 sends every message on its own
+	 * @param maxBytes : maximum size of a batch in bytes, 0 for no limit; a single larger message is sent alone
+	 * @param lingerMillis : maximum time in ms a message waits for the batch to fill up, 0 waits until the batch is full or flushed
+	 * @param sender : sends a batch
+	 */
+	public MessageBatcher(int maxMessages,int maxBytes,long lingerMillis,BatchSender sender) {
+		this.maxMessages = Math.max(1, maxMessages);
+		this.maxBytes = maxBytes>0 ? maxBytes : Integer.MAX_VALUE;
+		this.lingerMillis = lingerMillis;
+		this.sender = sender;
+		if(lingerMillis>0 && this.maxMessages>1) {
+			this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "qa-message-batcher");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * To add a message to the current batch.
+	 * @param message : the message
+	 * @throws IOException if the batch or an earlier batch couldn't be sent
+	 */
+	public synchronized void add(byte[] message) throws IOException {
+		this.checkError();
+		if(!this.messages.isEmpty() && this.bytes+4+message.length>this.maxBytes)
+			this.flush();
+		this.messages.add(message);
+		this.bytes += 4+message.length;
+		if(this.messages.size()>=this.maxMessages || this.bytes>=this.maxBytes) {
+			this.flush();
+		}else if(this.messages.size()==1 && this.scheduler!=null) {
+			this.lingerFlush = this.scheduler.schedule(this::lingerExpired, this.lingerMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * To send the current batch, if it isn't empty.
+	 * @throws IOException if the batch or an earlier batch couldn't be sent
+	 */
+	public synchronized void flush() throws IOException {
+		this.checkError();
+		if(this.lingerFlush!=null) {
+			this.lingerFlush.cancel(false);
+			this.lingerFlush = null;
+		}
+		if(this.messages.isEmpty())
+			return;
+		byte[] batch = RabbitMQUtils.writeByteArrays(this.messages.toArray(new byte[this.messages.size()][]));
+		this.messages.clear();
+		this.bytes = 0;
+		this.sender.sendBatch(batch);
+		this.sentBatches++;
+	}
+
+	/**
+	 * @return number of batches sent so far
+	 */
+	public synchronized int getSentBatches() {
+		return sentBatches;
+	}
+
+	/**
+	 * Sends the current batch and stops the linger timer.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			this.flush();
+		}finally {
+			if(this.scheduler!=null)
+				this.scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * To split a batch into its messages.
+	 * @param batch : the batch
+	 * @return the messages
+	 */
+	public static List<byte[]> unbatch(byte[] batch) {
+		List<byte[]> messages = new ArrayList<byte[]>();
+		ByteBuffer buffer = ByteBuffer.wrap(batch);
+		while(buffer.hasRemaining())
+			messages.add(RabbitMQUtils.readByteArray(buffer));
+		return messages;
+	}
+
+	private synchronized void lingerExpired() {
+		this.lingerFlush = null;
+		try {
+			this.flush();
+		}catch(IOException e) {
+			LOGGER.error("MessageBatcher: Couldn't send batch.", e);
+			this.error = e;
+		}
+	}
+
+	private void checkError() throws IOException {
+		if(this.error!=null)
+			throw this.error;
+	}
+}
@@ -0,0 +1,173 @@
+package org.hobbit.questionanswering.helper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Counters, gauges and timers of a QA benchmark component.
+ * The metrics of the component are served as plain text on http://host:port/metrics,
+ * if the component starts the server, and are written as a summary when it closes.
+ */
+public final class Metrics {
+	private static final Logger LOGGER = LogManager.getLogger(Metrics.class);
+
+	/** port of the metrics endpoint, the endpoint is started only if it is set */
+	public static final String PORT_PARAMETER_KEY = "qa.metrics_port";
+
+	private static final Map<String, Counter> COUNTERS = new ConcurrentSkipListMap<String, Counter>();
+	private static final Map<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<String, LongSupplier>();
+	private static final Map<String, Timer> TIMERS = new ConcurrentSkipListMap<String, Timer>();
+	private static HttpServer server;
+
+	private Metrics() {
+	}
+
+	/**
+	 * A monotonic count.
+	 */
+	public static class Counter {
+		private AtomicLong value = new AtomicLong();
+
+		public void increment() {
+			this.value.incrementAndGet();
+		}
+
+		public void add(long delta) {
+			this.value.addAndGet(delta);
+		}
+
+		public long get() {
+			return this.value.get();
+		}
+	}
+
+	/**
+	 * Durations in nanoseconds, kept in a {@link LatencyHistogram}.
+	 */
+	public static class Timer {
+		private LatencyHistogram histogram = new LatencyHistogram();
+		private long total;
+
+		public synchronized void record(long nanos) {
+			this.histogram.record(nanos);
+			this.total += Math.max(0, nanos);
+		}
+
+		/**
+		 * @param start : {@link System#nanoTime()} at the start of the timed action
+		 */
+		public void recordSince(long start) {
+			this.record(System.nanoTime()-start);
+		}
+
+		private synchronized String format(String name) {
+			long count = this.histogram.getCount();
+			return name+"_count "+count+"\n"
+					+name+"_mean_ms "+toMillis(count==0 ? 0 : this.total/count)+"\n"
+					+name+"_p50_ms "+toMillis(this.histogram.getValueAtPercentile(50))+"\n"
+					+name+"_p99_ms "+toMillis(this.histogram.getValueAtPercentile(99))+"\n"
+					+name+"_max_ms "+toMillis(this.histogram.getMax())+"\n";
+		}
+	}
+
+	/**
+	 * @param name : name of the counter
+	 * @return the counter, created on first use
+	 */
+	public static Counter counter(String name) {
+		return COUNTERS.computeIfAbsent(name, key -> new Counter());
+	}
+
+	/**
+	 * @param name : name of the timer
+	 * @return the timer, created on first use
+	 */
+	public static Timer timer(String name) {
+		return TIMERS.computeIfAbsent(name, key -> new Timer());
+	}
+
+	/**
+	 * To register a gauge, an existing gauge of that name is replaced.
+	 * @param name : name of the gauge
+	 * @param value : reads the current value
+	 */
+	public static void gauge(String name,LongSupplier value) {
+		GAUGES.put(name, value);
+	}
+
+	/**
+	 * @return all metrics, one "qa_name value" line each
+	 */
+	public static String format() {
+		StringBuilder text = new StringBuilder();
+		for(Map.Entry<String, Counter> counter:COUNTERS.entrySet())
+			text.append("qa_").append(counter.getKey()).append(' ').append(counter.getValue().get()).append('\n');
+		for(Map.Entry<String, LongSupplier> gauge:GAUGES.entrySet()) {
+			long value;
+			try {
+				value = gauge.getValue().getAsLong();
+			}catch(RuntimeException e) {
+				continue;
+			}
+			text.append("qa_").append(gauge.getKey()).append(' ').append(value).append('\n');
+		}
+		for(Map.Entry<String, Timer> timer:TIMERS.entrySet())
+			text.append(timer.getValue().format("qa_"+timer.getKey()));
+		return text.toString();
+	}
+
+	/**
+	 * To serve the metrics on http://host:port/metrics, if the port is set in the environment.
+	 * @param env : environment of the component
+	 * @throws IOException if the port is taken
+	 */
+	public static synchronized void startServer(Map<String, String> env) throws IOException {
+		if(server!=null || !env.containsKey(PORT_PARAMETER_KEY))
+			return;
+		int port;
+		try {
+			port = Integer.parseInt(env.get(PORT_PARAMETER_KEY));
+		}catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid metrics port: "+env.get(PORT_PARAMETER_KEY), e);
+		}
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/metrics", exchange -> {
+			byte[] body = format().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		LOGGER.info("Metrics: Serving metrics on port "+port+".");
+	}
+
+	/**
+	 * To write the summary of all metrics to the log and stop the server.
+	 * @param component : name of the component in the summary
+	 */
+	public static synchronized void close(String component) {
+		LOGGER.info(component+": Metrics summary:\n"+format());
+		if(server!=null) {
+			server.stop(0);
+			server = null;
+		}
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos/(double)TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -0,0 +1,153 @@
+package org.hobbit.questionanswering.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses messages of the QA benchmark components.
+ * A deflated message starts with a marker, any other message is taken as is, so a receiver decodes any message
+ * regardless of its own codec, and the none codec neither copies nor changes a message.
+ * The marker never starts the messages of the components: batches start with a non-negative length and Json with a bracket.
+ * Deflate uses a preset dictionary of frequent QALD Json fragments,
+ * which makes even small messages (a single question) shrink.
+ * The codec counts the bytes and time it spends, see {@link #getStats()}.
+ */
+public class PayloadCodec {
+	public static final String NONE = "none";
+	public static final String DEFLATE = "deflate";
+
+	private static final byte NONE_ID = 0;
+	private static final byte DEFLATE_ID = (byte) 0xFF;
+
+	/*
+	 * Fragments of the QALD Json format, the most frequent ones last, since deflate reaches close matches cheaper.
+	 */
+	private static final byte[] DICTIONARY = (
+			"PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> "
+			+ "PREFIX yago: <http://dbpedia.org/class/yago/> PREFIX foaf: <http://xmlns.com/foaf/0.1/> "
+			+ "PREFIX dbp: <http://dbpedia.org/property/> PREFIX dbo: <http://dbpedia.org/ontology/> PREFIX res: <http://dbpedia.org/resource/> "
+			+ "SELECT DISTINCT ?uri WHERE { ?uri rdf:type dbo: } ASK WHERE { SELECT COUNT(DISTINCT ?uri) WHERE { "
+			+ "\"answertype\" : \"resource\" , \"answertype\" : \"literal\" , \"answertype\" : \"boolean\" , \"answertype\" : \"number\" , "
+			+ "\"aggregation\" : false , \"onlydbo\" : true , \"hybrid\" : false , \"dataset\" : { \"id\" : \"hobbit_qa_ "
+			+ "\"query\" : { \"sparql\" : \"PREFIX dbo: <http://dbpedia.org/ontology/> PREFIX res: <http://dbpedia.org/resource/> "
+			+ "\"question\" : [ { \"language\" : \"en\" , \"string\" : \" , \"keywords\" : \" } ] , "
+			+ "\"answers\" : [ { \"head\" : { \"vars\" : [ \"uri\" ] } , \"results\" : { \"bindings\" : [ "
+			+ "{ \"uri\" : { \"type\" : \"uri\" , \"value\" : \"http://dbpedia.org/resource/"
+			+ "\" } } , { \"uri\" : { \"type\" : \"uri\" , \"value\" : \"http://dbpedia.org/resource/"
+			).getBytes(StandardCharsets.UTF_8);
+
+	private byte id;
+	private AtomicLong messages = new AtomicLong();
+	private AtomicLong rawBytes = new AtomicLong();
+	private AtomicLong encodedBytes = new AtomicLong();
+	private AtomicLong nanos = new AtomicLong();
+
+	/**
+	 * The class constructor
+	 * @param name : name of the codec used to encode messages, none or deflate
+	 */
+	public PayloadCodec(String name) {
+		if(NONE.equalsIgnoreCase(name))
+			this.id = NONE_ID;
+		else if(DEFLATE.equalsIgnoreCase(name))
+			this.id = DEFLATE_ID;
+		else
+			throw new IllegalArgumentException("Unknown payload codec: "+name);
+	}
+
+	/**
+	 * @param data : the message
+	 * @return the encoded message
+	 */
+	public byte[] encode(byte[] data) {
+		long start = System.nanoTime();
+		byte[] encoded;
+		if(this.id==DEFLATE_ID) {
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+				deflater.setDictionary(DICTIONARY);
+				deflater.setInput(data);
+				deflater.finish();
+				ByteArrayOutputStream out = new ByteArrayOutputStream(data.length/2+16);
+				out.write(this.id);
+				out.write(ByteBuffer.allocate(4).putInt(data.length).array(), 0, 4);
+				byte[] buffer = new byte[4096];
+				while(!deflater.finished()) {
+					int length = deflater.deflate(buffer);
+					out.write(buffer, 0, length);
+				}
+				encoded = out.toByteArray();
+			}finally {
+				deflater.end();
+			}
+		}else {
+			encoded = data;
+		}
+		this.count(data.length, encoded.length, start);
+		return encoded;
+	}
+
+	/**
+	 * To decode a message, with the codec named in the message.
+	 * @param data : the encoded message
+	 * @return the message
+	 * @throws IOException if the message is corrupt
+	 */
+	public byte[] decode(byte[] data) throws IOException {
+		long start = System.nanoTime();
+		byte[] decoded;
+		if(data.length>0 && data[0]==DEFLATE_ID) {
+			int length = ByteBuffer.wrap(data, 1, 4).getInt();
+			decoded = new byte[length];
+			Inflater inflater = new Inflater();
+			try {
+				inflater.setInput(data, 5, data.length-5);
+				int offset = 0;
+				while(offset<length) {
+					int read = inflater.inflate(decoded, offset, length-offset);
+					if(read==0) {
+						if(inflater.needsDictionary())
+							inflater.setDictionary(DICTIONARY);
+						else if(inflater.finished() || inflater.needsInput())
+							throw new IOException("Truncated message, "+offset+" of "+length+" bytes.");
+					}
+					offset += read;
+				}
+			}catch(DataFormatException e) {
+				throw new IOException(e);
+			}finally {
+				inflater.end();
+			}
+		}else {
+			decoded = data;
+		}
+		this.count(decoded.length, data.length, start);
+		return decoded;
+	}
+
+	/**
+	 * @return number of messages, sizes and throughput so far
+	 */
+	public String getStats() {
+		long raw = this.rawBytes.get();
+		long encoded = this.encodedBytes.get();
+		double seconds = this.nanos.get()/(double)TimeUnit.SECONDS.toNanos(1);
+		return String.format("%d messages, %d bytes raw, %d bytes encoded (ratio %.2f), %.1f MB/s",
+				this.messages.get(), raw, encoded, raw==0 ? 1.0 : encoded/(double)raw,
+				seconds==0 ? 0.0 : raw/seconds/1000000);
+	}
+
+	private void count(int raw,int encoded,long start) {
+		this.messages.incrementAndGet();
+		this.rawBytes.addAndGet(raw);
+		this.encodedBytes.addAndGet(encoded);
+		this.nanos.addAndGet(System.nanoTime()-start);
+	}
+}
@@ -1,9 +1,14 @@
 package org.hobbit.questionanswering.helper;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -21,13 +26,24 @@ import org.hobbit.questionanswering.QaDataGenerator;
 public class QaHelper {
 	private static final Logger LOGGER = LogManager.getLogger(QaDataGenerator.class);
 	
+	private static final int ANY_TRIPLE = -1;
+	
 	private List<JsonValue> data;
-	QaldBuilder qald;
+	private AnswerResolver resolver;
+	private AnswerCache answerCache;
 	private long seed;
 	private int numOfQuestions;
 	private String sparqlService;
+	private String queryService;
+	private boolean cacheOnly;
 	private int langId;
 	private boolean getAnswers;
+	private boolean lazySampling;
+	private int reservoirFactor;
+	private int partition;
+	private int partitions = 1;
+	//number of questions of all partitions together
+	private int totalQuestions;
 	
 	
 	/**
@@ -38,12 +54,65 @@ public class QaHelper {
 	 */
 	public QaHelper(long seed,int numOfQuestions,String sparqlService) {
 		this.numOfQuestions=numOfQuestions;
+		this.totalQuestions=numOfQuestions;
 		this.data=new ArrayList<JsonValue>();
 		this.seed = seed;
 		this.sparqlService = sparqlService;
+		this.queryService = sparqlService;
+		this.resolver = new AnswerResolver(sparqlService, AnswerResolver.DEFAULT_WORKERS, AnswerResolver.DEFAULT_WORKERS, AnswerResolver.DEFAULT_QUERY_TIMEOUT);
 		this.setGetAnswers(true);
 	}
 	
+	/**
+	 * To set up parallel answer resolution.
+	 * @param workers : number of worker threads used to resolve answers
+	 * @param maxInFlight : maximum number of queries sent but not yet collected
+	 * @param queryTimeout : time in milliseconds to wait for a single query
+	 */
+	public void setAnswerResolution(int workers,int maxInFlight,long queryTimeout) {
+		this.resolver = new AnswerResolver(this.sparqlService, workers, maxInFlight, queryTimeout);
+		this.resolver.setCache(this.answerCache);
+		this.resolver.setQueryService(this.queryService);
+		this.resolver.setCacheOnly(this.cacheOnly);
+	}
+	
+	/**
+	 * To answer the queries from a stand-in of the SPARQL service, e.g. a {@link LocalSparqlEndpoint}.
+	 * Answers are still looked up in the answer cache under the url of the SPARQL service,
+	 * answers of the stand-in aren't added to it.
+	 * @param queryService : url the queries are sent to
+	 */
+	public void setQueryService(String queryService) {
+		this.queryService = queryService;
+		this.resolver.setQueryService(queryService);
+	}
+	
+	/**
+	 * To take the answers only from the answer cache, e.g. a file of pre-resolved answers.
+	 * Questions missing in the cache have no answers.
+	 * @param cacheOnly : boolean argument
+	 */
+	public void setCacheOnly(boolean cacheOnly) {
+		this.cacheOnly = cacheOnly;
+		this.resolver.setCacheOnly(cacheOnly);
+	}
+	
+	/**
+	 * To use a cache of resolved answers, so repeated loads skip the SPARQL service.
+	 * @param answerCache : a loaded answer cache
+	 */
+	public void setAnswerCache(AnswerCache answerCache) {
+		this.answerCache = answerCache;
+		this.resolver.setCache(answerCache);
+	}
+	
+	/**
+	 * @return the answer cache or null if no cache is used
+	 */
+	public AnswerCache getAnswerCache() {
+		return answerCache;
+	}
+	
 	/**
 	 * To load large scale data set without considering Number of Triples.
 	 * @param fileName : The file name of data set (json)
@@ -51,29 +120,28 @@ public class QaHelper {
 	 * @throws Exception
 	 */
 	public List<JsonValue> getLargeScaleData(String fileName) throws Exception {
+		List<JsonValue> snapshot = this.getSnapshotData(fileName, DatasetSnapshot.ALL);
+		if(snapshot!=null)
+			return snapshot;
+		File precompiled = BinaryDataset.currentFileFor(fileName);
+		if(precompiled!=null)
+			return this.getPrecompiledData(precompiled, ANY_TRIPLE);
+		if(this.isStreaming())
+			return this.getStreamedData(fileName, quest -> 0, (quest, tag) -> {
+				QaldBuilder qald = new QaldBuilder();
+				qald.setQuestionAsJson(quest);
+				return qald;
+			});
 		JsonArray questionsArray=JSON.readAny(fileName).getAsArray();
-		if(this.isGetAnswers()){
-			for(JsonValue quest:questionsArray) {
-				qald = new QaldBuilder();
-				qald.setQuestionAsJson(quest.toString());
-				try {
-				qald.setAnswers(this.sparqlService);
-				if(this.qald.getAnswers().size()>0)
-					this.data.add(qald.getQuestionAsQald());
-				}catch(Exception e) {
-					LOGGER.error("QaHelper: ID="+this.qald.getID());
-					LOGGER.error("QaHelper: Query=\n"+this.qald.getQuery());
-					LOGGER.error("QaHelper: "+e.getMessage());
-				}
-			}
-		}else {
-			for(JsonValue quest:questionsArray) {
-				qald = new QaldBuilder();
-				qald.setQuestionAsJson(quest.toString());
-				qald.removeAnswers();
-				this.data.add(qald.getQuestionAsQald());
-			}
+		List<QaldBuilder> questions = new ArrayList<QaldBuilder>();
+		for(JsonValue quest:questionsArray) {
+			QaldBuilder qald = new QaldBuilder();
+			qald.setQuestionAsJson(quest.toString());
+			questions.add(qald);
 		}
+		if(this.isGetAnswers() && this.isLazySampling())
+			return this.sampleQuestions(questions);
+		this.addQuestions(questions);
 		if(this.numOfQuestions>this.data.size())
 			throw new Exception("Number of Quesrtions is bigger than the data set size!");
 		
@@ -89,34 +157,40 @@ public class QaHelper {
 	 * @throws Exception
 	 */
 	public List<JsonValue> getLargeScaleData(String fileName, int triple) throws Exception {
+		List<JsonValue> snapshot = this.getSnapshotData(fileName, DatasetSnapshot.triple(triple));
+		if(snapshot!=null)
+			return snapshot;
+		File precompiled = BinaryDataset.currentFileFor(fileName);
+		if(precompiled!=null)
+			return this.getPrecompiledData(precompiled, triple);
+		if(this.isStreaming())
+			return this.getStreamedData(fileName, quest -> {
+				QaldBuilder qald = new QaldBuilder();
+				qald.setQuestionAsJson(quest);
+				return qald.getTriple()==triple ? 0 : -1;
+			}, (quest, tag) -> {
+				QaldBuilder qald = new QaldBuilder();
+				qald.setQuestionAsJson(quest);
+				qald.removeTriple();
+				return qald;
+			});
 		
 		JsonArray questionsArray=JSON.readAny(fileName).getAsArray();
-		if(this.isGetAnswers()) {
-			for(JsonValue quest:questionsArray) {
-				qald = new QaldBuilder();
-				qald.setQuestionAsJson(quest.toString());
-				if(qald.getTriple()==triple) {
-					qald.removeTriple();
-					this.qald.setAnswers(this.sparqlService);
-					if(this.qald.getAnswers().size()>0)
-						this.data.add(qald.getQuestionAsQald());
-				}
-			}
-		}
-		else {
-			for(JsonValue quest:questionsArray) {
-				qald = new QaldBuilder();
-				qald.setQuestionAsJson(quest.toString());
-				if(qald.getTriple()==triple) {
-					qald.removeTriple();
-					this.qald.removeAnswers();
-					this.data.add(qald.getQuestionAsQald());
-				}
+		List<QaldBuilder> questions = new ArrayList<QaldBuilder>();
+		for(JsonValue quest:questionsArray) {
+			QaldBuilder qald = new QaldBuilder();
+			qald.setQuestionAsJson(quest.toString());
+			if(qald.getTriple()==triple) {
+				qald.removeTriple();
+				questions.add(qald);
 			}
 		}
+		if(this.isGetAnswers() && this.isLazySampling())
+			return this.sampleQuestions(questions);
+		this.addQuestions(questions);
 		if(this.data.size()<numOfQuestions)
 			throw new Exception("There is no enough questions has this triple!");
-		LOGGER.info("QaHelper: "+this.data.size()+" questions has answers with triple "+triple);
+		LOGGER.info("QaHelper: {} questions has answers with triple {}", this.data.size(), triple);
 		//System.out.println(this.data.size());
 		Collections.shuffle(this.data, new Random(seed));
 		return this.data.subList(0, numOfQuestions);
@@ -130,22 +204,42 @@ public class QaHelper {
 	 * @throws Exception
 	 */
 	public List<JsonValue> getMultilingualData(String fileName,String lang) throws Exception {
-		List<JsonValue> questionsArray=JSON.readAny(fileName).getAsArray();
-		this.setLanguages(questionsArray.get(0).getAsObject().get("question").getAsArray(),lang);
-		
-		for(JsonValue quest:questionsArray) {
-			qald = new QaldBuilder();
-			qald.setID(Integer.parseInt(quest.getAsObject().get("id").toString()));
-			qald.setOnlydbo(Boolean.parseBoolean(quest.getAsObject().get("onlydbo").toString()));
-			qald.setQuery(quest.getAsObject().get("query").getAsArray().get(this.langId).getAsObject().get("sparql").toString());
-			qald.setQuestionString(quest.getAsObject().get("question").getAsArray().get(this.langId).getAsObject().get("string").toString(),lang);
-			if(this.isGetAnswers()) {
-				qald.setAnswers(this.sparqlService);
-				if(this.qald.getAnswers().size()>0)
-					this.data.add(qald.getQuestionAsQald());
-			}else
-				this.data.add(qald.getQuestionAsQald());
+		List<JsonValue> snapshot = this.getSnapshotData(fileName, DatasetSnapshot.language(lang));
+		if(snapshot!=null)
+			return snapshot;
+		List<QaldBuilder> questions = new ArrayList<QaldBuilder>();
+		File precompiled = BinaryDataset.currentFileFor(fileName);
+		if(precompiled==null && this.isStreaming())
+			return this.getStreamedData(fileName,
+					quest -> getLanguageIndex(JSON.parseAny(quest).getAsObject().get("question").getAsArray(), lang),
+					(quest, tag) -> this.getMultilingualQuestion(JSON.parseAny(quest), tag, lang));
+		if(precompiled!=null) {
+			LOGGER.info("QaHelper: Loading precompiled data set {}.", precompiled);
+			BinaryDataset dataset = new BinaryDataset(precompiled.getPath());
+			DatasetIndex index = this.readIndex(precompiled);
+			if(index!=null) {
+				for(int i:index.getLanguageBucket(lang)) {
+					BinaryDataset.Record record = dataset.getRecord(i);
+					questions.add(this.getMultilingualQuestion(JSON.parseAny(dataset.getJson(record)), record.getLanguageIndex(lang), lang));
+				}
+			}else {
+				for(int i=0;i<dataset.size();i++) {
+					BinaryDataset.Record record = dataset.getRecord(i);
+					int langIndex = record.getLanguageIndex(lang);
+					if(langIndex>=0)
+						questions.add(this.getMultilingualQuestion(JSON.parseAny(dataset.getJson(record)), langIndex, lang));
+				}
+			}
+		}else {
+			List<JsonValue> questionsArray=JSON.readAny(fileName).getAsArray();
+			this.setLanguages(questionsArray.get(0).getAsObject().get("question").getAsArray(),lang);
+			
+			for(JsonValue quest:questionsArray)
+				questions.add(this.getMultilingualQuestion(quest, this.langId, lang));
 		}
+		if(this.isGetAnswers() && this.isLazySampling())
+			return this.sampleQuestions(questions);
+		this.addQuestions(questions);
 		
 		if(this.numOfQuestions>data.size())
 			throw new Exception("Number of Quesrtions ("+this.numOfQuestions+") is bigger than the data set size ("+data.size()+")!");
@@ -154,6 +248,308 @@ public class QaHelper {
 		return this.data.subList(0, numOfQuestions);
 	}
 	
+	/**
+	 * To resolve the answers of all candidate questions of a data set, for a {@link DatasetSnapshot}.
+	 * The candidates are the ones the precompiled data set gives for the variant, in the order of the data set.
+	 * @param fileName : Data set file name (json)
+	 * @param variant : {@link DatasetSnapshot#ALL}, {@link DatasetSnapshot#triple(int)} or {@link DatasetSnapshot#language(String)}
+	 * @return for every candidate the Qald formated question with answers, or null if it has none
+	 * @throws Exception
+	 */
+	public List<JsonValue> resolveCandidates(String fileName,String variant) throws Exception {
+		List<QaldBuilder> questions = new ArrayList<QaldBuilder>();
+		for(JsonValue quest:JSON.readAny(fileName).getAsArray()) {
+			if(variant.equals(DatasetSnapshot.ALL)) {
+				QaldBuilder qald = new QaldBuilder();
+				qald.setQuestionAsJson(quest.toString());
+				questions.add(qald);
+			}else if(variant.startsWith(DatasetSnapshot.TRIPLE_PREFIX)) {
+				QaldBuilder qald = new QaldBuilder();
+				qald.setQuestionAsJson(quest.toString());
+				if(qald.getTriple()==Integer.parseInt(variant.substring(DatasetSnapshot.TRIPLE_PREFIX.length()))) {
+					qald.removeTriple();
+					questions.add(qald);
+				}
+			}else if(variant.startsWith(DatasetSnapshot.LANGUAGE_PREFIX)) {
+				String lang = variant.substring(DatasetSnapshot.LANGUAGE_PREFIX.length());
+				int langIndex = getLanguageIndex(quest.getAsObject().get("question").getAsArray(), lang);
+				if(langIndex>=0)
+					questions.add(this.getMultilingualQuestion(quest, langIndex, lang));
+			}else {
+				throw new IllegalArgumentException("Unknown data set variant: "+variant);
+			}
+		}
+		return this.resolver.resolveEach(questions);
+	}
+	
+	/*
+	 * Selects the questions from the snapshot of a data set, the same ones resolve-all and (not streamed) lazy sampling
+	 * select from the precompiled data set. Null if answers aren't needed or there is no matching snapshot.
+	 */
+	private List<JsonValue> getSnapshotData(String fileName,String variant) throws Exception {
+		if(!this.isGetAnswers())
+			return null;
+		DatasetSnapshot snapshot;
+		try {
+			snapshot = DatasetSnapshot.read(fileName, variant, this.sparqlService);
+		}catch(IOException e) {
+			LOGGER.error("QaHelper: Couldn't read the snapshot of "+fileName+", loading the data set.", e);
+			return null;
+		}
+		if(snapshot==null)
+			return null;
+		LOGGER.info("QaHelper: Loading snapshot {} of {}.", variant, fileName);
+		List<Integer> candidates = new ArrayList<Integer>(snapshot.size());
+		for(int i=0;i<snapshot.size();i++)
+			candidates.add(i);
+		List<Integer> selected = new ArrayList<Integer>();
+		if(this.isLazySampling()) {
+			// the first questions with answers in the seeded order, as the resolver finds them
+			Collections.shuffle(candidates, new Random(seed));
+			candidates = this.partitionOf(candidates);
+			for(int i:candidates) {
+				if(selected.size()>=this.numOfQuestions)
+					break;
+				if(snapshot.hasAnswers(i))
+					selected.add(i);
+			}
+			if(selected.size()<this.numOfQuestions)
+				throw new Exception("Only "+selected.size()+" of "+candidates.size()+" questions have answers, "+this.numOfQuestions+" are needed!");
+		}else {
+			for(int i:this.partitionOf(candidates)) {
+				if(snapshot.hasAnswers(i))
+					selected.add(i);
+			}
+			if(this.numOfQuestions>selected.size())
+				throw new Exception("Number of Quesrtions is bigger than the data set size!");
+			Collections.shuffle(selected, new Random(seed));
+			selected = selected.subList(0, this.numOfQuestions);
+		}
+		for(int i:selected)
+			this.data.add(snapshot.getQuestion(i));
+		return this.data;
+	}
+	
+	/*
+	 * Builds a question of the multilingual data set in the given language.
+	 */
+	private QaldBuilder getMultilingualQuestion(JsonValue quest,int langIndex,String lang) {
+		QaldBuilder qald = new QaldBuilder();
+		qald.setID(Integer.parseInt(quest.getAsObject().get("id").toString()));
+		qald.setOnlydbo(Boolean.parseBoolean(quest.getAsObject().get("onlydbo").toString()));
+		qald.setQuery(quest.getAsObject().get("query").getAsArray().get(langIndex).getAsObject().get("sparql").toString());
+		qald.setQuestionString(quest.getAsObject().get("question").getAsArray().get(langIndex).getAsObject().get("string").toString(),lang);
+		return qald;
+	}
+	
+	/*
+	 * Loads large scale questions from a precompiled data set.
+	 * Records are filtered by their header, and only the selected ones are decoded.
+	 */
+	private List<JsonValue> getPrecompiledData(File precompiled,int triple) throws Exception {
+		LOGGER.info("QaHelper: Loading precompiled data set {}.", precompiled);
+		BinaryDataset dataset = new BinaryDataset(precompiled.getPath());
+		List<BinaryDataset.Record> records = new ArrayList<BinaryDataset.Record>();
+		DatasetIndex index = triple==ANY_TRIPLE ? null : this.readIndex(precompiled);
+		if(index!=null) {
+			for(int i:index.getTripleBucket(triple))
+				records.add(dataset.getRecord(i));
+		}else {
+			for(int i=0;i<dataset.size();i++) {
+				BinaryDataset.Record record = dataset.getRecord(i);
+				if(triple==ANY_TRIPLE || record.getTriple()==triple)
+					records.add(record);
+			}
+		}
+		
+		if(!this.isGetAnswers()) {
+			// without answers every record is kept, so shuffling the records selects the same questions
+			if(this.numOfQuestions>records.size())
+				throw new Exception("Number of Quesrtions is bigger than the data set size!");
+			Collections.shuffle(records, new Random(seed));
+			records = this.partitionOf(records);
+			if(this.numOfQuestions>records.size())
+				throw new Exception("Number of Quesrtions is bigger than the partition size!");
+			for(BinaryDataset.Record record:records.subList(0, numOfQuestions)) {
+				QaldBuilder qald = this.decode(dataset, record, triple!=ANY_TRIPLE);
+				qald.removeAnswers();
+				this.data.add(qald.getQuestionAsQald());
+			}
+			return this.data;
+		}
+		
+		if(this.isLazySampling()) {
+			// records are decoded only when the resolver reaches them
+			final BinaryDataset source = dataset;
+			final List<BinaryDataset.Record> selected = records;
+			final boolean removeTriple = triple!=ANY_TRIPLE;
+			return this.sampleQuestions(new AbstractList<QaldBuilder>() {
+				@Override
+				public QaldBuilder get(int index) {
+					return decode(source, selected.get(index), removeTriple);
+				}
+				
+				@Override
+				public int size() {
+					return selected.size();
+				}
+			}, records);
+		}
+		List<QaldBuilder> questions = new ArrayList<QaldBuilder>();
+		for(BinaryDataset.Record record:records)
+			questions.add(this.decode(dataset, record, triple!=ANY_TRIPLE));
+		this.addQuestions(questions);
+		if(this.numOfQuestions>this.data.size())
+			throw new Exception("Number of Quesrtions is bigger than the data set size!");
+		if(triple!=ANY_TRIPLE)
+			LOGGER.info("QaHelper: {} questions has answers with triple {}", this.data.size(), triple);
+		Collections.shuffle(this.data, new Random(seed));
+		return this.data.subList(0, numOfQuestions);
+	}
+	
+	/*
+	 * Reads the sidecar index of a precompiled data set, null if it is missing or outdated.
+	 */
+	private DatasetIndex readIndex(File precompiled) {
+		try {
+			DatasetIndex index = DatasetIndex.read(precompiled);
+			if(index==null)
+				LOGGER.info("QaHelper: No valid index for {}, scanning the records.", precompiled);
+			return index;
+		}catch(IOException e) {
+			LOGGER.error("QaHelper: Couldn't read the index of "+precompiled+", scanning the records.", e);
+			return null;
+		}
+	}
+	
+	/*
+	 * Builds the question of a precompiled record.
+	 */
+	private QaldBuilder decode(BinaryDataset dataset,BinaryDataset.Record record,boolean removeTriple) {
+		QaldBuilder qald = new QaldBuilder();
+		qald.setQuestionAsJson(dataset.getJson(record));
+		if(removeTriple)
+			qald.removeTriple();
+		return qald;
+	}
+	
+	/*
+	 * Streams a Json data set and keeps a seeded reservoir of totalQuestions*reservoirFactor candidates,
+	 * which are then resolved like in sampleQuestions. Peak memory depends on the reservoir, not on the file.
+	 * accept returns a tag (ex: the language index) for a candidate, or -1 to drop it.
+	 */
+	private List<JsonValue> getStreamedData(String fileName,ToIntFunction<String> accept,BiFunction<String, Integer, QaldBuilder> decode) throws Exception {
+		// all partitions keep the same reservoir, each resolves its share, so it is sized by the shared total
+		int capacity = (int)Math.min((long)this.totalQuestions*this.reservoirFactor, Integer.MAX_VALUE);
+		final List<Candidate> reservoir = new ArrayList<Candidate>();
+		Random random = new Random(seed);
+		int accepted = 0;
+		try(JsonArrayReader reader = new JsonArrayReader(fileName)) {
+			while(reader.hasNext()) {
+				String quest = reader.next();
+				int tag = accept.applyAsInt(quest);
+				if(tag<0)
+					continue;
+				if(reservoir.size()<capacity) {
+					reservoir.add(new Candidate(quest, tag));
+				}else {
+					int replace = random.nextInt(accepted+1);
+					if(replace<capacity)
+						reservoir.set(replace, new Candidate(quest, tag));
+				}
+				accepted++;
+			}
+		}
+		LOGGER.info("QaHelper: Streamed {}, kept {} of {} matching questions.", fileName, reservoir.size(), accepted);
+		// the reservoir keeps arrival order partly, shuffle it before resolving
+		Collections.shuffle(reservoir, random);
+		return this.resolveSample(this.partitionOf(new AbstractList<QaldBuilder>() {
+			@Override
+			public QaldBuilder get(int index) {
+				Candidate candidate = reservoir.get(index);
+				return decode.apply(candidate.json, candidate.tag);
+			}
+			
+			@Override
+			public int size() {
+				return reservoir.size();
+			}
+		}));
+	}
+	
+	/*
+	 * Shuffles the candidates with the seed and resolves them in that order
+	 * until numOfQuestions questions with answers are found.
+	 */
+	private List<JsonValue> sampleQuestions(List<QaldBuilder> questions) throws Exception {
+		Collections.shuffle(questions, new Random(seed));
+		return this.resolveSample(this.partitionOf(questions));
+	}
+	
+	/*
+	 * Same as sampleQuestions, for candidates which are decoded on access:
+	 * the records are shuffled instead of the decoded questions.
+	 */
+	private List<JsonValue> sampleQuestions(List<QaldBuilder> questions,List<BinaryDataset.Record> records) throws Exception {
+		Collections.shuffle(records, new Random(seed));
+		return this.resolveSample(this.partitionOf(questions));
+	}
+	
+	private List<JsonValue> resolveSample(List<QaldBuilder> questions) throws Exception {
+		this.data.addAll(this.resolver.resolve(questions, this.numOfQuestions));
+		if(this.data.size()<this.numOfQuestions)
+			throw new Exception("Only "+this.data.size()+" of "+questions.size()+" questions have answers, "+this.numOfQuestions+" are needed!");
+		LOGGER.info("QaHelper: Sampled {} questions with answers.", this.data.size());
+		return this.data;
+	}
+	
+	/*
+	 * Adds the prepared questions to the data, with resolved answers if getAnswers is set.
+	 * Questions without answers are dropped, the order of the questions is kept.
+	 */
+	private void addQuestions(List<QaldBuilder> questions) throws InterruptedException {
+		questions = this.partitionOf(questions);
+		if(this.isGetAnswers()) {
+			this.data.addAll(this.resolver.resolve(questions));
+		}else {
+			for(QaldBuilder qald:questions) {
+				qald.removeAnswers();
+				this.data.add(qald.getQuestionAsQald());
+			}
+		}
+	}
+	
+	/*
+	 * The questions of this partition: every partitions-th one, starting at partition.
+	 * The view is lazy, so candidates of other partitions are never decoded.
+	 */
+	private <T> List<T> partitionOf(final List<T> questions) {
+		if(this.partitions<=1)
+			return questions;
+		return new AbstractList<T>() {
+			@Override
+			public T get(int index) {
+				return questions.get(index*partitions+partition);
+			}
+			
+			@Override
+			public int size() {
+				return (questions.size()-partition+partitions-1)/partitions;
+			}
+		};
+	}
+	
+	/*
+	 * Position of a language in a question array, -1 if it is missing.
+	 */
+	private static int getLanguageIndex(JsonArray languages,String lang) {
+		for(int i =0;i<languages.size();i++) {
+			if(lang.equalsIgnoreCase(languages.get(i).getAsObject().get("language").toString().trim().replace("\"", "")))
+				return i;
+		}
+		return -1;
+	}
+	
 	/*
 	 * Auxiliary function used by getMultilingualData function
 	 */
@@ -167,6 +563,69 @@ public class QaHelper {
 			}
 		}
     }
+	/**
+	 * @return true if lazily sampled Json data sets are streamed instead of read as a whole
+	 */
+	public boolean isStreaming() {
+		return this.reservoirFactor>0 && this.isLazySampling() && this.isGetAnswers();
+	}
+	
+	/** To stream Json data sets when sampling lazily.
+	 *  Matching questions are kept in a seeded reservoir of totalQuestions*reservoirFactor candidates (all partitions together),
+	 *  so the factor must leave room for questions without answers. Precompiled data sets are preferred.
+	 * @param reservoirFactor: reservoir size as multiple of the number of questions, 0 to read the whole file
+	 */
+	public void setStreaming(int reservoirFactor) {
+		this.reservoirFactor = reservoirFactor;
+	}
+	
+	/** To load a disjoint share of the data set, for several data generators.
+	 *  All partitions order the candidates the same way (same data set and seed),
+	 *  partition p takes every partitions-th candidate starting at p.
+	 *  numOfQuestions is then the number of questions of this partition.
+	 * @param partition: index of this partition, 0 to partitions-1
+	 * @param partitions: number of partitions
+	 * @param totalQuestions: number of questions of all partitions, the same for every partition
+	 */
+	public void setPartition(int partition,int partitions,int totalQuestions) {
+		if(partitions<1 || partition<0 || partition>=partitions)
+			throw new IllegalArgumentException("Invalid partition "+partition+" of "+partitions+".");
+		this.partition = partition;
+		this.partitions = partitions;
+		this.totalQuestions = totalQuestions;
+	}
+	
+	/**
+	 * @return true if questions are sampled before their answers are resolved
+	 */
+	public boolean isLazySampling() {
+		return lazySampling;
+	}
+	
+	/** To choose how questions with answers are selected
+	 *  - False (default) resolves the answers of all questions, then shuffles them with the seed.
+	 *  - True shuffles the candidates with the seed first and resolves answers only until
+	 *    enough questions with answers are found. The selection differs from the default
+	 *    one, but is deterministic per seed as well.
+	 * @param lazySampling: boolean argument
+	 */
+	public void setLazySampling(boolean lazySampling) {
+		this.lazySampling = lazySampling;
+	}
+	
+	/*
+	 * A raw Json question kept in the reservoir.
+	 */
+	private static class Candidate {
+		private String json;
+		private int tag;
+		
+		private Candidate(String json,int tag) {
+			this.json = json;
+			this.tag = tag;
+		}
+	}
+	
 	/** 
 	 * @return the getAnswers
 	 */
@@ -0,0 +1,143 @@
+package org.hobbit.questionanswering.helper;
+
+/**
+ * Precision, recall and F1 measure of QALD, for single questions and in aggregate.
+ * <p>
+ * For a question: if the gold answer set is empty, a system answering nothing scores 1, any other response scores 0.
+ * Otherwise precision is the share of the system's answers that are gold answers and recall the share of gold answers
+ * the system found, an empty response has precision 1, recall 0 and F1 0 as in GERBIL QA.
+ * </p>
+ * Macro measures average over the questions, micro measures count the answers of all questions together,
+ * the QALD F1 is the harmonic mean of macro precision and macro recall.
+ */
+public class QaldScore {
+	private long questions;
+	private long errors;
+	private double precisionSum;
+	private double recallSum;
+	private double f1Sum;
+	private long truePositives;
+	private long systemAnswers;
+	private long goldAnswers;
+
+	/**
+	 * To score the answers of a question.
+	 * @param gold : the gold answers
+	 * @param system : the answers of the system
+	 * @return F1 measure of the question
+	 */
+	public double add(AnswerSet gold,AnswerSet system) {
+		int common = gold.intersectionSize(system);
+		double precision;
+		double recall;
+		if(gold.size()==0) {
+			precision = system.size()==0 ? 1 : 0;
+			recall = precision;
+		}else {
+			// no wrong answers, as GERBIL QA counts it
+			precision = system.size()==0 ? 1 : common/(double)system.size();
+			recall = common/(double)gold.size();
+		}
+		double f1 = f1(precision, recall);
+		this.questions++;
+		this.precisionSum += precision;
+		this.recallSum += recall;
+		this.f1Sum += f1;
+		this.truePositives += common;
+		this.systemAnswers += system.size();
+		this.goldAnswers += gold.size();
+		return f1;
+	}
+
+	/**
+	 * To count a question the system didn't answer or answered with an invalid response, it scores 0.
+	 * @param gold : the gold answers
+	 */
+	public void addError(AnswerSet gold) {
+		this.errors++;
+		this.questions++;
+		this.goldAnswers += gold.size();
+	}
+
+	/**
+	 * To add the questions of another score.
+	 * @param other : the score
+	 */
+	public void merge(QaldScore other) {
+		this.questions += other.questions;
+		this.errors += other.errors;
+		this.precisionSum += other.precisionSum;
+		this.recallSum += other.recallSum;
+		this.f1Sum += other.f1Sum;
+		this.truePositives += other.truePositives;
+		this.systemAnswers += other.systemAnswers;
+		this.goldAnswers += other.goldAnswers;
+	}
+
+	/**
+	 * @return number of scored questions, errors included
+	 */
+	public long getQuestions() {
+		return questions;
+	}
+
+	/**
+	 * @return number of questions without a valid response
+	 */
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return precision averaged over the questions
+	 */
+	public double getMacroPrecision() {
+		return questions==0 ? 0 : precisionSum/questions;
+	}
+
+	/**
+	 * @return recall averaged over the questions
+	 */
+	public double getMacroRecall() {
+		return questions==0 ? 0 : recallSum/questions;
+	}
+
+	/**
+	 * @return F1 measure averaged over the questions
+	 */
+	public double getMacroF1() {
+		return questions==0 ? 0 : f1Sum/questions;
+	}
+
+	/**
+	 * @return precision over the answers of all questions
+	 */
+	public double getMicroPrecision() {
+		return systemAnswers==0 ? 0 : truePositives/(double)systemAnswers;
+	}
+
+	/**
+	 * @return recall over the answers of all questions
+	 */
+	public double getMicroRecall() {
+		return goldAnswers==0 ? 0 : truePositives/(double)goldAnswers;
+	}
+
+	/**
+	 * @return F1 measure of micro precision and micro recall
+	 */
+	public double getMicroF1() {
+		return f1(this.getMicroPrecision(), this.getMicroRecall());
+	}
+
+	/**
+	 * @return harmonic mean of macro precision and macro recall
+	 */
+	public double getQaldF1() {
+		return f1(this.getMacroPrecision(), this.getMacroRecall());
+	}
+
+	private static double f1(double precision,double recall) {
+		return precision+recall==0 ? 0 : 2*precision*recall/(precision+recall);
+	}
+}
@@ -0,0 +1,237 @@
+package org.hobbit.questionanswering.helper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Sends question sets at fixed offsets from a start instant.
+ * Every deadline is computed from the start instant, so the time needed to send a set
+ * doesn't add up over the run. The last part of every wait is spent spinning,
+ * which keeps the firing precision below a millisecond.
+ * A set is only sent once it is marked as ready; a late set is sent as soon as it gets ready,
+ * without moving the deadlines of the following sets.
+ */
+public class SetDispatcher {
+	private static final Logger LOGGER = LogManager.getLogger(SetDispatcher.class);
+
+	/** time before a deadline from which on the dispatcher spins instead of sleeping */
+	private static final long SPIN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * Sends a single question set.
+	 */
+	public interface SetSender {
+		void sendSet(int set) throws Exception;
+	}
+
+	private int numberOfSets;
+	private IntToLongFunction offsets;
+	private long tailNanos;
+	private SetSender sender;
+	private ScheduledExecutorService scheduler;
+	private CountDownLatch finished;
+
+	private boolean[] ready;
+	private long[] jitter;
+	private long start;
+	private boolean started;
+	private int nextSet;
+	private boolean waitingForSet;
+	private boolean stopped;
+	private int sentSets;
+	private volatile Exception error;
+
+	/**
+	 * The class constructor
+	 * @param numberOfSets : number of question sets
+	 * @param offsets : offset in nanoseconds from the start instant at which a set is sent
+	 * @param tailNanos : offset in nanoseconds from the start instant at which the dispatch is finished
+	 * @param sender : sends a set
+	 */
+	public SetDispatcher(int numberOfSets,IntToLongFunction offsets,long tailNanos,SetSender sender) {
+		this.numberOfSets = numberOfSets;
+		this.offsets = offsets;
+		this.tailNanos = tailNanos;
+		this.sender = sender;
+		this.ready = new boolean[numberOfSets];
+		this.jitter = new long[numberOfSets];
+		this.finished = new CountDownLatch(1);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "qa-set-dispatcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * To create a dispatcher which sends sets with a fixed interval.
+	 * @param numberOfSets : number of question sets
+	 * @param intervalNanos : time between two sets in nanoseconds, also waited after the last set
+	 * @param sender : sends a set
+	 * @return the dispatcher
+	 */
+	public static SetDispatcher withInterval(int numberOfSets,long intervalNanos,SetSender sender) {
+		return new SetDispatcher(numberOfSets, set -> set*intervalNanos, numberOfSets*intervalNanos, sender);
+	}
+
+	/**
+	 * To start the clock, the first set is due immediately.
+	 */
+	public synchronized void start() {
+		if(this.started)
+			return;
+		this.started = true;
+		this.start = System.nanoTime();
+		if(this.numberOfSets==0)
+			this.scheduleFinish();
+		else
+			this.schedule(0);
+	}
+
+	/**
+	 * @return true if the clock has been started
+	 */
+	public synchronized boolean isStarted() {
+		return started;
+	}
+
+	/**
+	 * To mark a set as ready to be sent.
+	 * @param set : index of the question set
+	 */
+	public synchronized void markReady(int set) {
+		this.ready[set] = true;
+		if(this.waitingForSet && set==this.nextSet) {
+			this.waitingForSet = false;
+			this.scheduler.execute(() -> this.fire(set));
+		}
+	}
+
+	/**
+	 * To wait until all sets are sent and the time after the last set passed.
+	 * @throws Exception the exception thrown while sending a set
+	 */
+	public void awaitCompletion() throws Exception {
+		this.finished.await();
+		if(this.error!=null)
+			throw this.error;
+	}
+
+	/**
+	 * @return mean difference between actual and planned send time of the sent sets in nanoseconds
+	 */
+	public synchronized long getMeanJitter() {
+		long sum = 0;
+		for(int i=0;i<this.sentSets;i++)
+			sum += this.jitter[i];
+		return this.sentSets==0 ? 0 : sum/this.sentSets;
+	}
+
+	/**
+	 * @return maximum difference between actual and planned send time of the sent sets in nanoseconds
+	 */
+	public synchronized long getMaxJitter() {
+		long max = 0;
+		for(int i=0;i<this.sentSets;i++)
+			max = Math.max(max, this.jitter[i]);
+		return max;
+	}
+
+	/**
+	 * To finish the dispatch early from within {@link SetSender#sendSet(int)}.
+	 * The set being sent doesn't count as sent, the following sets are dropped
+	 * and {@link #awaitCompletion()} returns without waiting for the tail.
+	 */
+	public synchronized void stop() {
+		this.stopped = true;
+	}
+
+	/**
+	 * @return number of sets sent so far
+	 */
+	public synchronized int getSentSets() {
+		return sentSets;
+	}
+
+	/**
+	 * To stop the dispatcher, sets which are not sent yet are dropped.
+	 */
+	public void shutdown() {
+		this.scheduler.shutdownNow();
+		this.finished.countDown();
+	}
+
+	private void fire(int set) {
+		long deadline = this.start+this.offsets.applyAsLong(set);
+		spinUntil(deadline);
+		synchronized(this) {
+			if(this.stopped) {
+				this.finished.countDown();
+				return;
+			}
+			if(!this.ready[set]) {
+				// markReady sends the set as soon as it is ready
+				this.waitingForSet = true;
+				return;
+			}
+		}
+		this.jitter[set] = System.nanoTime()-deadline;
+		Metrics.timer("dispatch_jitter").record(this.jitter[set]);
+		try {
+			this.sender.sendSet(set);
+		}catch(Exception e) {
+			LOGGER.error("SetDispatcher: Couldn't send set "+set+".", e);
+			this.error = e;
+			this.finished.countDown();
+			return;
+		}
+		synchronized(this) {
+			if(this.stopped) {
+				LOGGER.info("SetDispatcher: Stopped before set {}.", set);
+				this.logSummary();
+				this.finished.countDown();
+				return;
+			}
+			if(LOGGER.isDebugEnabled())
+				LOGGER.debug("SetDispatcher: Set {} sent, jitter {} us.", set, TimeUnit.NANOSECONDS.toMicros(this.jitter[set]));
+			this.sentSets++;
+			Metrics.counter("sets_sent").increment();
+			this.nextSet = set+1;
+			if(this.nextSet<this.numberOfSets)
+				this.schedule(this.nextSet);
+			else
+				this.scheduleFinish();
+		}
+	}
+
+	private void schedule(int set) {
+		long delay = this.start+this.offsets.applyAsLong(set)-System.nanoTime()-SPIN_NANOS;
+		this.scheduler.schedule(() -> this.fire(set), Math.max(0, delay), TimeUnit.NANOSECONDS);
+	}
+
+	private void scheduleFinish() {
+		long deadline = this.start+this.tailNanos;
+		this.scheduler.schedule(() -> {
+			spinUntil(deadline);
+			this.logSummary();
+			this.finished.countDown();
+		}, Math.max(0, deadline-System.nanoTime()-SPIN_NANOS), TimeUnit.NANOSECONDS);
+	}
+
+	private void logSummary() {
+		LOGGER.info("SetDispatcher: "+this.getSentSets()+" sets sent, mean jitter "
+				+TimeUnit.NANOSECONDS.toMicros(this.getMeanJitter())+" us, max jitter "
+				+TimeUnit.NANOSECONDS.toMicros(this.getMaxJitter())+" us.");
+	}
+
+	private static void spinUntil(long deadline) {
+		while(System.nanoTime()-deadline<0)
+			Thread.yield();
+	}
+}
@@ -0,0 +1,113 @@
+package org.hobbit.questionanswering.helper;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The HTTP client of the SPARQL queries of a component.
+ * Queries created with {@link #query(String, Query)} are sent over a client with a connection pool,
+ * the default HTTP client of Jena, e.g. used by other libraries, stays as it is.
+ * Connections are kept alive between queries and responses may be gzip or deflate encoded,
+ * so a query doesn't pay for a TCP and TLS handshake and the results travel compressed.
+ */
+public final class SparqlHttpClient {
+	private static final Logger LOGGER = LogManager.getLogger(SparqlHttpClient.class);
+
+	/** maximum number of connections, to a single endpoint and in total */
+	public static final String MAX_CONNECTIONS_PARAMETER_KEY = "qa.sparql_max_connections";
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+	//time to open a connection to the endpoint
+	private static final int CONNECT_TIMEOUT = 10000;
+	//idle connections are closed before the endpoint drops them
+	private static final long IDLE_TIMEOUT = 30000;
+	//connections idle for longer are checked before they are reused
+	private static final int VALIDATE_AFTER_INACTIVITY = 2000;
+
+	private static volatile CloseableHttpClient client;
+
+	private SparqlHttpClient() {
+	}
+
+	/**
+	 * To create the pooled client of the component, if it doesn't have one yet.
+	 * @param env : the environment, may set {@link #MAX_CONNECTIONS_PARAMETER_KEY}
+	 * @param defaultMaxConnections : maximum number of connections if the environment doesn't set it,
+	 * e.g. the number of threads sending queries
+	 * @param queryTimeout : time in milliseconds to wait for a pooled connection and for the next data of a response,
+	 * so a hanging request doesn't block its thread for good
+	 */
+	public static synchronized void install(Map<String, String> env,int defaultMaxConnections,long queryTimeout) {
+		if(client!=null)
+			return;
+		int maxConnections = Math.max(1, defaultMaxConnections);
+		if(env.containsKey(MAX_CONNECTIONS_PARAMETER_KEY)) {
+			try {
+				maxConnections = Math.max(1, Integer.parseInt(env.get(MAX_CONNECTIONS_PARAMETER_KEY)));
+			}catch(NumberFormatException e) {
+				LOGGER.error("SparqlHttpClient: Couldn't parse \""+MAX_CONNECTIONS_PARAMETER_KEY+"\", using "+maxConnections+" connections.", e);
+			}
+		}
+		final PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+		// the queries of a component usually go to a single endpoint, which may take all connections
+		manager.setMaxTotal(maxConnections);
+		manager.setDefaultMaxPerRoute(maxConnections);
+		manager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+		int timeout = (int) Math.min(Integer.MAX_VALUE, Math.max(1, queryTimeout));
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(Math.min(CONNECT_TIMEOUT, timeout))
+				.setConnectionRequestTimeout(timeout)
+				.setSocketTimeout(timeout)
+				.build();
+		// the builder asks for gzip and deflate responses and decodes them
+		client = HttpClients.custom()
+				.useSystemProperties()
+				.setConnectionManager(manager)
+				.setDefaultRequestConfig(requestConfig)
+				.evictExpiredConnections()
+				.evictIdleConnections(IDLE_TIMEOUT, TimeUnit.MILLISECONDS)
+				.build();
+		Metrics.gauge("sparql_connections_leased", () -> manager.getTotalStats().getLeased());
+		Metrics.gauge("sparql_connections_available", () -> manager.getTotalStats().getAvailable());
+		LOGGER.info("SparqlHttpClient: Sending SPARQL queries over a pool of up to "+maxConnections+" connections.");
+	}
+
+	/**
+	 * To create the execution of a query against a SPARQL service.
+	 * @param sparqlService : a url for sparql service
+	 * @param query : the query
+	 * @return an execution over the pooled client, or over the default client of Jena if none is installed
+	 */
+	public static QueryExecution query(String sparqlService,Query query) {
+		HttpClient pooled = client;
+		if(pooled==null)
+			return QueryExecutionFactory.sparqlService(sparqlService, query);
+		return QueryExecutionFactory.sparqlService(sparqlService, query, pooled);
+	}
+
+	/**
+	 * To close the pooled connections, queries afterwards use the default client of Jena.
+	 */
+	public static synchronized void close() {
+		if(client==null)
+			return;
+		try {
+			client.close();
+		}catch(IOException e) {
+			LOGGER.warn("SparqlHttpClient: Couldn't close the HTTP client.", e);
+		}
+		client = null;
+	}
+}
@@ -0,0 +1,92 @@
+package org.hobbit.questionanswering.helper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.atlas.json.JsonValue;
+import org.hobbit.QaldBuilder;
+import org.hobbit.core.rabbit.RabbitMQUtils;
+
+/**
+ * The message a data generator sends to the task generator for a single question.
+ * It carries the global index of the question, the task for the system (without answers and query)
+ * and the expected answer for the evaluation storage, both already serialized, so the task generator only forwards them.
+ */
+public class TaskPayload {
+
+	private int index;
+	private byte[] task;
+	private byte[] answer;
+
+	private TaskPayload(int index,byte[] task,byte[] answer) {
+		this.index = index;
+		this.task = task;
+		this.answer = answer;
+	}
+
+	/**
+	 * To serialize both parts of a question once.
+	 * @param index : global index of the question, unique over all data generators
+	 * @param question : question in QALD format, with answers
+	 * @param datasetId : id of the data set the question belongs to
+	 * @return the message
+	 */
+	public static byte[] encode(int index,JsonValue question,String datasetId) {
+		QaldBuilder qald = new QaldBuilder(question.toString());
+		qald.setDatasetID(datasetId);
+		byte[] answer = RabbitMQUtils.writeString(qald.getQuestionAsQald().toString());
+		qald.removeAnswers();
+		qald.removeQuery();
+		byte[] task = RabbitMQUtils.writeString(qald.getQuestionAsQald().toString());
+		byte[] parts = RabbitMQUtils.writeByteArrays(new byte[][] { task, answer });
+		return ByteBuffer.allocate(4+parts.length).putInt(index).put(parts).array();
+	}
+
+	/**
+	 * @param data : the message
+	 * @return the decoded message
+	 */
+	public static TaskPayload decode(byte[] data) {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		int index = buffer.getInt();
+		return new TaskPayload(index, RabbitMQUtils.readByteArray(buffer), RabbitMQUtils.readByteArray(buffer));
+	}
+
+	/**
+	 * To decode a message of the data generator, i.e. an encoded batch of questions.
+	 * @param codec : the payload codec, it reads the codec from the message
+	 * @param message : the message
+	 * @return the questions of the message
+	 * @throws IOException if the message can't be decoded
+	 */
+	public static List<TaskPayload> decodeMessage(PayloadCodec codec,byte[] message) throws IOException {
+		List<byte[]> questions = MessageBatcher.unbatch(codec.decode(message));
+		List<TaskPayload> payloads = new ArrayList<TaskPayload>(questions.size());
+		for(byte[] question:questions)
+			payloads.add(decode(question));
+		return payloads;
+	}
+
+	/**
+	 * @return global index of the question
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return task data for the system
+	 */
+	public byte[] getTask() {
+		return task;
+	}
+
+	/**
+	 * @return answer data for the evaluation storage
+	 */
+	public byte[] getAnswer() {
+		return answer;
+	}
+}
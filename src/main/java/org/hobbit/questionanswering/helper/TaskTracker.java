@@ -0,0 +1,122 @@
+package org.hobbit.questionanswering.helper;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the tasks sent to the system until each of them is answered or timed out,
+ * so the benchmark controller doesn't wait longer for the system than its last outstanding task needs.
+ * A task is answered once the evaluation storage acknowledges its response,
+ * it times out a fixed time after it was reported as sent.
+ */
+public class TaskTracker implements AckListener.AckHandler {
+	private long taskTimeoutNanos;
+	//deadlines of the outstanding tasks, in the order they were sent
+	private Map<String, Long> deadlines = new LinkedHashMap<String, Long>();
+	//acknowledgements can overtake the report of the sent task
+	private Set<String> acknowledged = new HashSet<String>();
+	private int sent;
+	private int timedOut;
+	private boolean stopped;
+
+	/**
+	 * The class constructor
+	 * @param taskTimeout : time in milliseconds a task may take to be answered
+	 */
+	public TaskTracker(long taskTimeout) {
+		this.taskTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(taskTimeout);
+	}
+
+	/**
+	 * To add sent tasks, their timeouts start now.
+	 * @param taskIds : ids of the sent tasks
+	 */
+	public synchronized void sent(String... taskIds) {
+		long deadline = System.nanoTime()+this.taskTimeoutNanos;
+		for(String taskId:taskIds) {
+			this.sent++;
+			if(!this.acknowledged.remove(taskId))
+				this.deadlines.put(taskId, deadline);
+		}
+	}
+
+	/**
+	 * Marks a task as answered.
+	 */
+	@Override
+	public synchronized void acknowledged(String taskId,long receivedNanos) {
+		if(this.deadlines.remove(taskId)==null) {
+			this.acknowledged.add(taskId);
+		}else if(this.deadlines.isEmpty()) {
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * To stop waiting for the outstanding tasks, e.g. since the system terminated.
+	 */
+	public synchronized void stop() {
+		this.stopped = true;
+		this.notifyAll();
+	}
+
+	/**
+	 * Waits until every sent task is answered or timed out.
+	 * @param maxWaitTime : time in milliseconds to wait at most
+	 * @return true if no task is outstanding anymore, false if the wait was stopped or took too long
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean awaitCompletion(long maxWaitTime) throws InterruptedException {
+		long end = System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(maxWaitTime);
+		while(!this.stopped) {
+			long now = System.nanoTime();
+			long next = this.expire(now);
+			if(this.deadlines.isEmpty())
+				return true;
+			if(now-end>=0)
+				return false;
+			TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, Math.min(next, end)-now));
+		}
+		return this.deadlines.isEmpty();
+	}
+
+	/*
+	 * Removes the timed out tasks, returns the deadline of the oldest outstanding task.
+	 */
+	private long expire(long now) {
+		Iterator<Long> iterator = this.deadlines.values().iterator();
+		while(iterator.hasNext()) {
+			long deadline = iterator.next();
+			if(deadline-now>0)
+				return deadline;
+			iterator.remove();
+			this.timedOut++;
+		}
+		return now;
+	}
+
+	/**
+	 * @return number of tasks reported as sent
+	 */
+	public synchronized int getSent() {
+		return this.sent;
+	}
+
+	/**
+	 * @return number of tasks which are neither answered nor timed out
+	 */
+	public synchronized int getOutstanding() {
+		return this.deadlines.size();
+	}
+
+	/**
+	 * @return number of tasks which timed out
+	 */
+	public synchronized int getTimedOut() {
+		return this.timedOut;
+	}
+}